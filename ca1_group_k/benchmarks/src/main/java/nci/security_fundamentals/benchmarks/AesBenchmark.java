@@ -0,0 +1,110 @@
+package nci.security_fundamentals.benchmarks;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.security.GeneralSecurityException;
+import java.util.concurrent.TimeUnit;
+
+import javax.crypto.SecretKey;
+import javax.crypto.spec.SecretKeySpec;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import nci.security_fundamentals.security.AesGcmUtils;
+import nci.security_fundamentals.security.AesUtils;
+
+/**
+ * AesBenchmark - AesUtils (CBC, text and binary API) and AesGcmUtils per message size
+ *
+ * No MongoDB or .env needed - a fixed 16-byte test key is used.
+ *
+ * encryptText / decryptText     - the Base64(IV):Base64(ciphertext) path ChatClient uses
+ * encryptBinary / decryptBinary - IV || ciphertext between reused ByteBuffers
+ * gcmSeal / gcmOpen             - the negotiated AES-GCM chat frame (encrypt + tag, verify + decrypt)
+ *
+ * Each thread has its own buffers, so -t N measures N independent senders.
+ * Run: java -jar target/benchmarks.jar AesBenchmark -prof gc
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class AesBenchmark {
+
+    private static final SecretKey KEY = new SecretKeySpec("bench-aes-key-16".getBytes(StandardCharsets.UTF_8), "AES");
+
+    @Param({"64", "1024", "16384"})
+    public int messageSize;
+
+    private String message;
+    private String encryptedText;
+    private ByteBuffer plain;
+    private ByteBuffer encrypted;
+    private ByteBuffer cipherOut;
+    private ByteBuffer decrypted;
+    private String sessionId;
+    private long seq;
+    private String gcmFrame;
+
+    @Setup
+    public void setUp() throws Exception {
+        message = "m".repeat(messageSize);
+        encryptedText = AesUtils.encrypt(KEY, message);
+
+        plain = ByteBuffer.wrap(message.getBytes(StandardCharsets.UTF_8));
+        encrypted = ByteBuffer.allocate(AesUtils.encryptedSize(messageSize));
+        cipherOut = ByteBuffer.allocate(AesUtils.encryptedSize(messageSize));
+        decrypted = ByteBuffer.allocate(AesUtils.encryptedSize(messageSize));
+        AesUtils.encrypt(KEY, plain, encrypted);
+        encrypted.flip();
+
+        sessionId = AesGcmUtils.newSessionId();
+        gcmFrame = AesGcmUtils.seal(KEY, "bench_user", sessionId, 1, message);
+    }
+
+    @Benchmark
+    public String encryptText() throws Exception {
+        return AesUtils.encrypt(KEY, message);
+    }
+
+    @Benchmark
+    public String decryptText() throws Exception {
+        return AesUtils.decrypt(KEY, encryptedText);
+    }
+
+    @Benchmark
+    public int encryptBinary() throws GeneralSecurityException {
+        plain.rewind();
+        cipherOut.clear();
+        return AesUtils.encrypt(KEY, plain, cipherOut);
+    }
+
+    @Benchmark
+    public int decryptBinary() throws GeneralSecurityException {
+        encrypted.rewind();
+        decrypted.clear();
+        return AesUtils.decrypt(KEY, encrypted, decrypted);
+    }
+
+    @Benchmark
+    public String gcmSeal() throws GeneralSecurityException {
+        return AesGcmUtils.seal(KEY, "bench_user", sessionId, ++seq, message);
+    }
+
+    @Benchmark
+    public String gcmOpen() throws GeneralSecurityException {
+        return AesGcmUtils.open(KEY, "bench_user", gcmFrame);
+    }
+}
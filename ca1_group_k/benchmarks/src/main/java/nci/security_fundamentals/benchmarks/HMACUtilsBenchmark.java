@@ -0,0 +1,73 @@
+package nci.security_fundamentals.benchmarks;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import nci.security_fundamentals.config.HMACUtils;
+
+/**
+ * HMACUtilsBenchmark - HMACUtils as the chat code calls it (String in, Base64 String out)
+ *
+ * Needs HMAC_SECRET_KEY from the .env in ca1_group_k - run from the benchmarks
+ * directory so EnvConfig finds ../.env. HmacBenchmark measures the engine
+ * underneath without a .env.
+ *
+ * generate       - what ChatClient does per message (CBC-HMAC mode)
+ * verify         - verifyHMAC("sender: message", hmac)
+ * verifySender   - verifyHMAC(sender, message, hmac), what ClientHandler does
+ *
+ * Run: java -jar target/benchmarks.jar HMACUtilsBenchmark -prof gc
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class HMACUtilsBenchmark {
+
+    private static final String SENDER = "bench_user";
+
+    @Param({"64", "1024", "16384"})
+    public int messageSize;
+
+    private String message;
+    private String signed;
+    private String hmac;
+
+    @Setup
+    public void setUp() {
+        message = "m".repeat(messageSize);
+        signed = SENDER + ": " + message;
+        hmac = HMACUtils.generateHMAC(signed);
+        if (hmac == null || !HMACUtils.verifyHMAC(SENDER, message, hmac)) {
+            throw new IllegalStateException("HMACUtils has no key - is HMAC_SECRET_KEY set in ca1_group_k/.env?");
+        }
+    }
+
+    @Benchmark
+    public String generate() {
+        return HMACUtils.generateHMAC(signed);
+    }
+
+    @Benchmark
+    public boolean verify() {
+        return HMACUtils.verifyHMAC(signed, hmac);
+    }
+
+    @Benchmark
+    public boolean verifySender() {
+        return HMACUtils.verifyHMAC(SENDER, message, hmac);
+    }
+}
@@ -0,0 +1,83 @@
+package nci.security_fundamentals.benchmarks;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Base64;
+import java.util.concurrent.TimeUnit;
+
+import javax.crypto.Mac;
+import javax.crypto.spec.SecretKeySpec;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+
+import nci.security_fundamentals.security.HmacEngine;
+
+/**
+ * HmacBenchmark - HMAC verifications per second: the old HMACUtils path vs HmacEngine
+ *
+ * No .env needed - a fixed test key is used for both sides.
+ *
+ * legacyVerify  - what HMACUtils.verifyHMAC did before: Mac.getInstance + new SecretKeySpec
+ *                 + init per call, Base64 both ways, String.equals
+ * engineVerify  - HmacEngine.verify on bytes: per-thread keyed Mac, constant-time compare
+ * engineVerifyBase64 - HmacEngine behind the String API HMACUtils still offers
+ *
+ * One thread, so the score is verifications per second per core. Add -prof gc for
+ * bytes allocated per verification (gc.alloc.rate.norm), or -t N for more threads.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Threads(1)
+@Fork(1)
+public class HmacBenchmark {
+
+    private static final byte[] KEY = "benchmark-hmac-key-0123456789abcdef".getBytes(StandardCharsets.UTF_8);
+
+    @Param({"64", "1024", "16384"})
+    public int messageSize;
+
+    private final HmacEngine engine = new HmacEngine(KEY);
+    private String message;
+    private byte[] messageBytes;
+    private String hmacBase64;
+    private byte[] hmacBytes;
+
+    @Setup
+    public void setUp() throws Exception {
+        message = "m".repeat(messageSize);
+        messageBytes = message.getBytes(StandardCharsets.UTF_8);
+        hmacBytes = engine.mac(messageBytes);
+        hmacBase64 = Base64.getEncoder().encodeToString(hmacBytes);
+    }
+
+    @Benchmark
+    public boolean legacyVerify() throws Exception {
+        Mac mac = Mac.getInstance(HmacEngine.ALGORITHM);
+        mac.init(new SecretKeySpec(KEY, HmacEngine.ALGORITHM));
+        String computed = Base64.getEncoder().encodeToString(mac.doFinal(message.getBytes(StandardCharsets.UTF_8)));
+        return computed.equals(hmacBase64);
+    }
+
+    @Benchmark
+    public boolean engineVerify() {
+        return engine.verify(messageBytes, hmacBytes);
+    }
+
+    @Benchmark
+    public boolean engineVerifyBase64() {
+        return engine.verify(message.getBytes(StandardCharsets.UTF_8), Base64.getDecoder().decode(hmacBase64));
+    }
+}
@@ -0,0 +1,58 @@
+package nci.security_fundamentals.benchmarks;
+
+import java.util.concurrent.TimeUnit;
+
+import org.bson.types.ObjectId;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import nci.security_fundamentals.auth.JwtService;
+
+/**
+ * JwtBenchmark - Issuing a token on login and validating it on every handshake
+ *
+ * Needs JWT_SECRET_KEY from the .env in ca1_group_k - run from the benchmarks
+ * directory so EnvConfig finds ../.env. No MongoDB.
+ *
+ * Run: java -jar target/benchmarks.jar JwtBenchmark -prof gc
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class JwtBenchmark {
+
+    private JwtService jwtService;
+    private ObjectId userId;
+    private String token;
+
+    @Setup
+    public void setUp() {
+        jwtService = new JwtService();
+        userId = new ObjectId();
+        token = jwtService.getToken(userId, "bench_user", "bench_user@bench.local");
+        if (!userId.toHexString().equals(jwtService.validateToken(token))) {
+            throw new IllegalStateException("Token did not validate: " + jwtService.validateToken(token));
+        }
+    }
+
+    @Benchmark
+    public String getToken() {
+        return jwtService.getToken(userId, "bench_user", "bench_user@bench.local");
+    }
+
+    @Benchmark
+    public String validateToken() {
+        return jwtService.validateToken(token);
+    }
+}
@@ -0,0 +1,57 @@
+package nci.security_fundamentals.benchmarks;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import nci.security_fundamentals.auth.PasswordEncryptor;
+
+/**
+ * PasswordEncryptorBenchmark - Password hashing on registration and checking on login
+ *
+ * No MongoDB or .env needed.
+ * encrypt includes the SecureRandom salt, which is usually most of the cost.
+ *
+ * Run: java -jar target/benchmarks.jar PasswordEncryptorBenchmark -prof gc
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class PasswordEncryptorBenchmark {
+
+    @Param({"8", "32", "128"})
+    public int passwordLength;
+
+    private final PasswordEncryptor encryptor = new PasswordEncryptor();
+    private String password;
+    private String encrypted;
+
+    @Setup
+    public void setUp() {
+        password = "p".repeat(passwordLength);
+        encrypted = encryptor.encryptString(password);
+    }
+
+    @Benchmark
+    public String encrypt() {
+        return encryptor.encryptString(password);
+    }
+
+    @Benchmark
+    public String decrypt() {
+        return encryptor.decryptString(encrypted);
+    }
+}
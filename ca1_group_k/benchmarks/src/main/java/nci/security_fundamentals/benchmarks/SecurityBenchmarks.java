@@ -0,0 +1,57 @@
+package nci.security_fundamentals.benchmarks;
+
+import java.util.List;
+import java.util.Set;
+import java.util.TreeSet;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.profile.GCProfiler;
+import org.openjdk.jmh.results.format.ResultFormatType;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.options.Options;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+/**
+ * SecurityBenchmarks - Baseline for every security primitive at several thread counts
+ *
+ * Runs AesBenchmark, HmacBenchmark, HMACUtilsBenchmark, PasswordEncryptorBenchmark and
+ * JwtBenchmark once per thread count, each in two modes:
+ * - Throughput (ops/s) - does it scale with threads?
+ * - SampleTime         - latency percentiles (p50, p99, p99.9) per call
+ * with the GC profiler on (gc.alloc.rate.norm = bytes allocated per call).
+ *
+ * Results go to security-<threads>t.json, one file per thread count, so a later run
+ * can be compared with the baseline (e.g. on jmh.morethan.me).
+ *
+ * Run (from the benchmarks directory, .env in ca1_group_k):
+ *   java -cp target/benchmarks.jar nci.security_fundamentals.benchmarks.SecurityBenchmarks [regex]
+ * The optional regex narrows the benchmarks, e.g. "AesBenchmark.gcm".
+ * Thread counts: 1, 2, 4 and the number of cores.
+ */
+public class SecurityBenchmarks {
+
+    private static final String DEFAULT_INCLUDE =
+            "(AesBenchmark|HmacBenchmark|HMACUtilsBenchmark|PasswordEncryptorBenchmark|JwtBenchmark)\\.";
+
+    public static void main(String[] args) throws Exception {
+        String include = args.length > 0 ? args[0] : DEFAULT_INCLUDE;
+        int cores = Runtime.getRuntime().availableProcessors();
+
+        // 1, 2, 4 and all cores - never more threads than cores (that only measures the scheduler)
+        Set<Integer> threadCounts = new TreeSet<>(List.of(1, Math.min(2, cores), Math.min(4, cores), cores));
+        for (int threads : threadCounts) {
+            Options options = new OptionsBuilder()
+                    .include(include)
+                    .threads(threads)
+                    .mode(Mode.Throughput)
+                    .mode(Mode.SampleTime)
+                    .timeUnit(TimeUnit.MICROSECONDS)
+                    .addProfiler(GCProfiler.class)
+                    .resultFormat(ResultFormatType.JSON)
+                    .result("security-" + threads + "t.json")
+                    .build();
+            new Runner(options).run();
+        }
+    }
+}
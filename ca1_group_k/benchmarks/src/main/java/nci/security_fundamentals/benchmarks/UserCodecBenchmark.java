@@ -0,0 +1,107 @@
+package nci.security_fundamentals.benchmarks;
+
+import java.nio.ByteBuffer;
+import java.util.Date;
+import java.util.concurrent.TimeUnit;
+
+import org.bson.BsonBinaryReader;
+import org.bson.BsonBinaryWriter;
+import org.bson.Document;
+import org.bson.codecs.DecoderContext;
+import org.bson.codecs.DocumentCodec;
+import org.bson.codecs.EncoderContext;
+import org.bson.io.BasicOutputBuffer;
+import org.bson.types.ObjectId;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import nci.security_fundamentals.server.db.UserCodec;
+import nci.security_fundamentals.server.models.User;
+
+/**
+ * UserCodecBenchmark - Decoding a user document: Document + new User(doc) vs UserCodec
+ *
+ * No MongoDB needed - one realistic user is encoded to BSON bytes once and every
+ * benchmark decodes those same bytes, which is the work the driver does per reply.
+ *
+ * Reports:
+ * - Time per decode, and per decode + re-encode (roundTrip*, the read-modify-write path)
+ * - Allocation per decode with the GC profiler:
+ *     java -jar target/benchmarks.jar UserCodecBenchmark -prof gc
+ *   (compare gc.alloc.rate.norm - bytes allocated per operation)
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class UserCodecBenchmark {
+
+    private final UserCodec userCodec = new UserCodec();
+    private final DocumentCodec documentCodec = new DocumentCodec();
+    private byte[] bson;
+
+    @Setup
+    public void setUp() {
+        User user = new User("codec_bench_user", "codec_bench_user@bench.local", "salt1234:" + "x".repeat(40));
+        user.setId(new ObjectId());
+        user.setImagePasswordHash("i".repeat(256));
+        user.setLastLogin(new Date());
+
+        BasicOutputBuffer buffer = new BasicOutputBuffer();
+        try (BsonBinaryWriter writer = new BsonBinaryWriter(buffer)) {
+            userCodec.encode(writer, user, EncoderContext.builder().build());
+        }
+        bson = buffer.toByteArray();
+    }
+
+    @Benchmark
+    public User decodeViaDocument() {
+        try (BsonBinaryReader reader = new BsonBinaryReader(ByteBuffer.wrap(bson))) {
+            Document doc = documentCodec.decode(reader, DecoderContext.builder().build());
+            return new User(doc);
+        }
+    }
+
+    @Benchmark
+    public User decodeViaUserCodec() {
+        try (BsonBinaryReader reader = new BsonBinaryReader(ByteBuffer.wrap(bson))) {
+            return userCodec.decode(reader, DecoderContext.builder().build());
+        }
+    }
+
+    @Benchmark
+    public byte[] roundTripViaDocument() {
+        BasicOutputBuffer buffer = new BasicOutputBuffer(512);
+        try (BsonBinaryWriter writer = new BsonBinaryWriter(buffer)) {
+            Document doc;
+            try (BsonBinaryReader reader = new BsonBinaryReader(ByteBuffer.wrap(bson))) {
+                doc = documentCodec.decode(reader, DecoderContext.builder().build());
+            }
+            documentCodec.encode(writer, new User(doc).toDocument(), EncoderContext.builder().build());
+        }
+        return buffer.getInternalBuffer();
+    }
+
+    @Benchmark
+    public byte[] roundTripViaUserCodec() {
+        BasicOutputBuffer buffer = new BasicOutputBuffer(512);
+        try (BsonBinaryWriter writer = new BsonBinaryWriter(buffer)) {
+            User user;
+            try (BsonBinaryReader reader = new BsonBinaryReader(ByteBuffer.wrap(bson))) {
+                user = userCodec.decode(reader, DecoderContext.builder().build());
+            }
+            userCodec.encode(writer, user, EncoderContext.builder().build());
+        }
+        return buffer.getInternalBuffer();
+    }
+}
@@ -0,0 +1,96 @@
+package nci.security_fundamentals.benchmarks;
+
+import java.util.concurrent.TimeUnit;
+
+import org.bson.RawBsonDocument;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import com.mongodb.client.MongoCollection;
+import com.mongodb.client.MongoDatabase;
+import com.mongodb.client.model.Filters;
+import com.mongodb.client.model.Projections;
+
+import nci.security_fundamentals.server.db.MongoConnectionManager;
+import nci.security_fundamentals.server.db.User_repository;
+import nci.security_fundamentals.server.models.User;
+import nci.security_fundamentals.server.models.UserAuthView;
+
+/**
+ * UserLookupBenchmark - Full-document reads vs projected auth-view reads
+ *
+ * Needs a reachable MongoDB (.env in ca1_group_k). Seeds one benchmark user
+ * and removes it again afterwards.
+ *
+ * Reports:
+ * - Latency per lookup (JMH sample mode, percentiles in the output)
+ * - Bytes per reply document, printed once during setup
+ *
+ * Run: java -jar target/benchmarks.jar UserLookupBenchmark
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.SampleTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 5)
+@Measurement(iterations = 5, time = 10)
+@Fork(1)
+public class UserLookupBenchmark {
+
+    private static final String BENCH_USERNAME = "jmh_lookup_bench_user";
+
+    private MongoConnectionManager mongo;
+    private User_repository repository;
+    private User seeded;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        mongo = MongoConnectionManager.getInstance();
+        MongoDatabase database = mongo.getDatabase();
+        repository = new User_repository(database);
+
+        if (repository.findByUsername(BENCH_USERNAME) == null) {
+            User user = new User(BENCH_USERNAME, BENCH_USERNAME + "@bench.local", "salt1234:" + "x".repeat(40));
+            // Realistic image password hash so the full document has its normal weight
+            user.setImagePasswordHash("i".repeat(256));
+            user.setLastLogin(new java.util.Date());
+            seeded = repository.createUser(user);
+        }
+
+        // Same queries, read as raw BSON to see how many bytes each reply carries
+        MongoCollection<RawBsonDocument> raw = database.getCollection("user_data", RawBsonDocument.class);
+        RawBsonDocument full = raw.find(Filters.eq("username", BENCH_USERNAME)).first();
+        RawBsonDocument projected = raw.find(Filters.eq("username", BENCH_USERNAME))
+                .projection(Projections.include("username", "passwordHash", "isActive")).first();
+        System.out.println();
+        System.out.println("[BENCH] Full document:      " + full.getByteBuffer().remaining() + " bytes");
+        System.out.println("[BENCH] Auth view document: " + projected.getByteBuffer().remaining() + " bytes");
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        if (seeded != null) {
+            repository.deleteUser(seeded.getId());
+        }
+        mongo.close();
+    }
+
+    @Benchmark
+    public User fullDocumentByUsername() {
+        return repository.findByUsername(BENCH_USERNAME);
+    }
+
+    @Benchmark
+    public UserAuthView authViewByUsername() {
+        return repository.findAuthViewByUsername(BENCH_USERNAME);
+    }
+}
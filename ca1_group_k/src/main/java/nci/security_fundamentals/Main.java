@@ -13,6 +13,7 @@ public class Main {
     public static void main(String[] args) {
         System.out.println("=== LockTalk Server ===\n");
         ChatServer server = new ChatServer(8080);
+        Runtime.getRuntime().addShutdownHook(new Thread(server::stopServer));
         server.startServer();
        
     }
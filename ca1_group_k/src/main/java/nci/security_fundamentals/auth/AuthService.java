@@ -1,13 +1,27 @@
 package nci.security_fundamentals.auth;
 
+import org.bson.types.ObjectId;
+
+import java.util.concurrent.CompletionException;
+
+import com.auth0.jwt.JWT;
+import com.mongodb.MongoWriteException;
+import com.auth0.jwt.interfaces.DecodedJWT;
+
+import nci.security_fundamentals.server.db.AsyncUserRepository;
+import nci.security_fundamentals.server.db.UserWriteBehindBuffer;
+import nci.security_fundamentals.server.db.UserStore;
 import nci.security_fundamentals.server.db.User_repository;
 import nci.security_fundamentals.server.models.User;
+import nci.security_fundamentals.server.models.UserAuthView;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
 
 /**
  * AuthService - The Brain of Authentication
  * 
  * PURPOSE: Contains all authentication business logic
- * POSITION IN ARCHITECTURE: Middle layer between LoginHandler and User_repository
+ * POSITION IN ARCHITECTURE: Middle layer between LoginHandler and the UserStore
  * 
  * RESPONSIBILITIES:
  * - Validate login credentials
@@ -15,9 +29,12 @@ import nci.security_fundamentals.server.models.User;
  * - Generate JWT tokens (via JwtService)
  * - Validate JWT tokens
  * - Authenticate users by token
+ * - Revoke tokens / users (via TokenRevocationList, server side only)
+ * - Record lastLogin on login / handshake (via UserWriteBehindBuffer, server side only)
  * 
  * DEPENDENCIES:
- * - User_repository: To read/write user data from MongoDB
+ * - UserStore: To read/write user data (User_repository for MongoDB, or InMemoryUserStore)
+ * - AsyncUserRepository: Concurrent lookups where a request needs several (optional)
  * - JwtService: To create and validate JWT tokens
  * - PasswordEncryptor: To securely hash/verify passwords
  * 
@@ -27,19 +44,61 @@ import nci.security_fundamentals.server.models.User;
  * - Easy to add new auth methods (OAuth, 2FA) without changing LoginHandler
  */
 public class AuthService {
+    private static final Logger log = LoggerFactory.getLogger(AuthService.class);
 
     // Dependencies - all auth-related services
-    private final User_repository userRepository;  // Database access
+    private final UserStore userRepository;        // Database access
     private final JwtService jwtService;          // Token operations
     PasswordEncryptor peq;                        // Password hashing
+    private final TokenRevocationList revocationList; // null = revocation not enabled
+    private final UserWriteBehindBuffer writeBehind;  // null = lastLogin not recorded
+    private final AsyncUserRepository asyncRepository; // null = lookups run one after another
 
     /**
      * Constructor - Initializes all authentication services
      * 
      * @param userRepository Connected to MongoDB via LoginHandler
      */
-    public AuthService(User_repository userRepository) {
+    public AuthService(UserStore userRepository) {
+        this(userRepository, null);
+    }
+
+    /**
+     * Constructor with token revocation (no lastLogin recording)
+     * 
+     * @param userRepository Connected to MongoDB
+     * @param revocationList Checked on every handshake, may be null
+     */
+    public AuthService(UserStore userRepository, TokenRevocationList revocationList) {
+        this(userRepository, revocationList, null);
+    }
+
+    /**
+     * Constructor with token revocation and batched lastLogin updates
+     * 
+     * @param userRepository Connected to MongoDB
+     * @param revocationList Checked on every handshake, may be null
+     * @param writeBehind    Queues lastLogin updates instead of writing them per login, may be null
+     */
+    public AuthService(UserStore userRepository, TokenRevocationList revocationList,
+                       UserWriteBehindBuffer writeBehind) {
+        this(userRepository, revocationList, writeBehind, null);
+    }
+
+    /**
+     * Full server constructor - used by ChatServer
+     * 
+     * @param userRepository  Connected to MongoDB
+     * @param revocationList  Checked on every handshake, may be null
+     * @param writeBehind     Queues lastLogin updates, may be null
+     * @param asyncRepository Runs independent lookups concurrently, may be null
+     */
+    public AuthService(UserStore userRepository, TokenRevocationList revocationList,
+                       UserWriteBehindBuffer writeBehind, AsyncUserRepository asyncRepository) {
         this.userRepository = userRepository;
+        this.revocationList = revocationList;
+        this.writeBehind = writeBehind;
+        this.asyncRepository = asyncRepository;
         jwtService = new JwtService();
         peq = new PasswordEncryptor();
     }
@@ -48,10 +107,11 @@ public class AuthService {
      * Register a new user
      * 
      * PROCESS:
-     * 1. Validate all fields are provided
+     * 1. Validate all fields are provided, username and email not taken
+     *    (both checks run at the same time when an AsyncUserRepository is set)
      * 2. Encrypt password using PasswordEncryptor
      * 3. Create User object with encrypted password
-     * 4. Save to database via User_repository
+     * 4. Save to database via the UserStore
      * 
      * SECURITY: Password is NEVER stored in plain text
      * 
@@ -61,10 +121,9 @@ public class AuthService {
         // Registration logic here
         try {
             if (!(username == null && email == null && password == null)) {
-                // Check if username already exists
-                User existingUser = userRepository.findByUsername(username);
-                if (existingUser != null) {
-                    return "Registration failed: Username already exists";
+                String taken = checkAvailability(username, email);
+                if (taken != null) {
+                    return "Registration failed: " + taken;
                 }
                 
                 User newUser = new User(username, email, peq.encryptString(password));
@@ -73,6 +132,12 @@ public class AuthService {
                 return "missing user information: email: " + email + ", username: " + username + ", password: " + password;
             }
 
+        } catch (MongoWriteException e) {
+            // Unique index caught a duplicate the check above missed (e.g. same email, or a race)
+            return "Registration failed: " + User_repository.describeWriteError(e.getError().getCode(), e.getError().getMessage());
+        } catch (CompletionException e) {
+            // Async check failed or timed out - report the underlying reason
+            return "Registration failed: " + AsyncUserRepository.unwrap(e).getMessage();
         } catch (Exception e) {
             return "Registration failed: " + e.getMessage();
         }
@@ -80,11 +145,28 @@ public class AuthService {
         return "User registered successfully: " + username;
     }
 
+    /**
+     * Is the username or email already taken? (limit-1, _id-only queries)
+     * 
+     * @return null if both are free, otherwise the reason
+     */
+    private String checkAvailability(String username, String email) {
+        if (asyncRepository != null) {
+            // Both queries in flight at once - wait for the slower one only
+            return asyncRepository.checkAvailability(username, email).join();
+        }
+        if (userRepository.usernameExists(username)) {
+            return UserStore.DUPLICATE_USERNAME;
+        }
+        // The unique email index still rejects duplicates if this check is skipped
+        return email != null && userRepository.emailExists(email) ? UserStore.DUPLICATE_EMAIL : null;
+    }
+
     /**
      * Login user and generate JWT token
      * 
      * AUTHENTICATION FLOW:
-     * 1. Look up user in database by username
+     * 1. Look up user in database by username (only login fields are fetched)
      * 2. Decrypt stored password hash
      * 3. Compare with provided password
      * 4. If match: Generate JWT token with user info
@@ -94,11 +176,14 @@ public class AuthService {
      */
     public String login(String username, String password) {
         try {
-            User currUser = userRepository.findByUsername(username);
-            if (currUser != null) {
+            UserAuthView currUser = userRepository.findLoginView(username);
+            if (currUser != null && !currUser.isActive()) {
+                return "Account is deactivated";
+            } else if (currUser != null) {
                 String psw = currUser.getPasswordHash();
                 if (peq.decryptString(psw).equals(password)) { // peq.encryptString add in later when encryption of password is finished
-                    String token = jwtService.getToken(currUser);
+                    String token = jwtService.getToken(currUser.getId(), currUser.getUsername(), currUser.getEmail());
+                    recordLogin(currUser.getId());
                     return token;
                 } else {
                     return "Password does not match encrypted password";
@@ -108,7 +193,7 @@ public class AuthService {
             }
 
         } catch (Exception e) {
-            System.out.println(e.getMessage());
+            log.warn("[AUTH] Login for {} failed: {}", username, e.getMessage());
             return "Could not log in: " + e.getMessage();
         }
     }
@@ -122,14 +207,14 @@ public class AuthService {
      * PROCESS:
      * 1. Validate token signature and expiration
      * 2. Extract username from token claims
-     * 3. Look up user in database
-     * 4. Return User object if valid, null if invalid
+     * 3. Look up user in database (projected: id, username, isActive, passwordHash)
+     * 4. Return the view if valid and the account is active, null otherwise
      * 
      * WHY: Allows stateless authentication - no session storage needed
      * 
-     * @return User object if token is valid, null otherwise
+     * @return UserAuthView if token is valid, null otherwise
      */
-    public User authenticateWithToken(String token) {
+    public UserAuthView authenticateWithToken(String token) {
 //        String tokenResult = jwtService.validateToken(token);
 //        User user = null;
 //        System.out.println("[DEBUG] Token validation result: " + tokenResult);
@@ -148,40 +233,57 @@ public class AuthService {
 //        }
 //
 //        return user;
-        System.out.println("[DEBUG] Authenticating token...");
         String tokenResult = jwtService.validateToken(token);
-        System.out.println("[DEBUG] Token validation result: " + tokenResult);
+        log.debug("[AUTH] Token validation result: {}", tokenResult);
 
         if (tokenResult.startsWith("Invalid Token:")) {
-            System.out.println("[DEBUG] Token invalid. Rejecting.");
+            log.debug("[AUTH] Token invalid. Rejecting.");
+            return null;
+        }
+
+        if (isTokenRevoked(token)) {
+            log.debug("[AUTH] Token revoked. Rejecting.");
             return null;
         }
 
         // Try username lookup first
         String username = jwtService.getUsernameFromToken(token);
-        System.out.println("[DEBUG] Extracted username from token: " + username);
+        log.debug("[AUTH] Extracted username from token: {}", username);
 
-        User user = userRepository.findByUsername(username);
+        UserAuthView user = userRepository.findAuthViewByUsername(username);
 
         // If not found by username, fall back to ObjectId lookup
         if (user == null) {
-            System.out.println("[DEBUG] User not found by username, trying ObjectId lookup...");
+            log.debug("[AUTH] User not found by username, trying ObjectId lookup");
             try {
-                user = userRepository.findById(new org.bson.types.ObjectId(tokenResult));
+                user = userRepository.findAuthViewById(new org.bson.types.ObjectId(tokenResult));
             } catch (Exception e) {
-                System.out.println("[DEBUG] Could not parse ObjectId: " + e.getMessage());
+                log.debug("[AUTH] Could not parse ObjectId: {}", e.getMessage());
             }
         }
 
         if (user == null) {
-            System.out.println("[DEBUG] Authentication failed — user not found.");
+            log.debug("[AUTH] Authentication failed - user not found");
+        } else if (!user.isActive()) {
+            log.debug("[AUTH] Authentication failed - account deactivated");
+            return null;
         } else {
-            System.out.println("[DEBUG] User found: " + user.getUsername());
+            log.debug("[AUTH] User found: {}", user.getUsername());
+            recordLogin(user.getId());
         }
 
         return user;
     }
 
+    /**
+     * Queue a lastLogin update - coalesced and written in the next batch, not right now
+     */
+    private void recordLogin(ObjectId userId) {
+        if (writeBehind != null) {
+            writeBehind.touchLastLogin(userId);
+        }
+    }
+
     /**
      * Quick check if a token is valid
      * 
@@ -201,4 +303,66 @@ public class AuthService {
     public String getUsernameFromToken(String token) {
         return jwtService.getUsernameFromToken(token);
     }
+
+    /**
+     * Expiry of a (signature-valid) token in millis - resumption tickets are capped at it
+     */
+    public long getTokenExpiry(String token) {
+        return JWT.decode(token).getExpiresAt().getTime();
+    }
+
+    /**
+     * Check a (signature-valid) token against the revocation list
+     * 
+     * Almost always answered by the in-memory Bloom filter - the database
+     * is only asked when the filter reports a possible match.
+     * 
+     * @return true if the token or its user has been revoked
+     */
+    public boolean isTokenRevoked(String token) {
+        if (revocationList == null) {
+            return false;
+        }
+        DecodedJWT jwt = JWT.decode(token);
+        return revocationList.isRevoked(jwt.getId(), jwt.getSubject(), jwt.getIssuedAt());
+    }
+
+    /**
+     * Check whether all sessions of a user were revoked (for resumed sessions)
+     */
+    public boolean isUserRevoked(String userId) {
+        return revocationList != null && revocationList.isUserRevoked(userId);
+    }
+
+    /**
+     * Revoke one token before it expires (e.g. logout, stolen token)
+     * 
+     * @return true if the token was revoked
+     */
+    public boolean revokeToken(String token) {
+        if (revocationList == null || !isTokenValid(token)) {
+            return false;
+        }
+        DecodedJWT jwt = JWT.decode(token);
+        if (jwt.getId() == null) {
+            // Older token without a jti - can only be revoked together with all of the user's tokens
+            revocationList.revokeUser(jwt.getSubject());
+        } else {
+            revocationList.revokeToken(jwt.getId(), jwt.getExpiresAt());
+        }
+        return true;
+    }
+
+    /**
+     * Deactivate a user and revoke every token they currently hold
+     * 
+     * @return true if the user was deactivated
+     */
+    public boolean deactivateUser(ObjectId userId) {
+        boolean deactivated = userRepository.deactivateUser(userId);
+        if (revocationList != null) {
+            revocationList.revokeUser(userId.toHexString());
+        }
+        return deactivated;
+    }
 }
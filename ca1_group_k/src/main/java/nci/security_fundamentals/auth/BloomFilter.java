@@ -0,0 +1,137 @@
+package nci.security_fundamentals.auth;
+
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * BloomFilter - Compact "definitely not / maybe" set of strings
+ *
+ * PURPOSE: Lets TokenRevocationList answer "is this token revoked?" from memory.
+ * - mightContain() == false  -> the key was NEVER added (no false negatives)
+ * - mightContain() == true   -> the key was probably added (false positive rate ~fpp)
+ *
+ * HOW IT WORKS:
+ * - A bit array of numBits bits and numHashes hash functions
+ * - add() sets numHashes bits, mightContain() checks they are all set
+ * - Hash functions come from one 64-bit hash split in two (Kirsch-Mitzenmacher)
+ *
+ * Thread-safe: bits live in an AtomicLongArray so add() can run while handshakes read.
+ */
+public class BloomFilter {
+
+    private static final int MAGIC = 0x424C4F4D; // "BLOM"
+
+    private final AtomicLongArray bits;
+    private final long numBits;
+    private final int numHashes;
+
+    /**
+     * Size a filter for an expected number of keys and false-positive probability
+     *
+     * @param expectedInsertions How many keys will be added
+     * @param fpp Acceptable false-positive probability, e.g. 0.01
+     */
+    public BloomFilter(long expectedInsertions, double fpp) {
+        long n = Math.max(1, expectedInsertions);
+        long m = (long) Math.ceil(-n * Math.log(fpp) / (Math.log(2) * Math.log(2)));
+        m = Math.max(64, m);
+        this.numBits = ((m + 63) / 64) * 64;
+        this.numHashes = Math.max(1, (int) Math.round((double) numBits / n * Math.log(2)));
+        this.bits = new AtomicLongArray((int) (numBits / 64));
+    }
+
+    private BloomFilter(long numBits, int numHashes, AtomicLongArray bits) {
+        this.numBits = numBits;
+        this.numHashes = numHashes;
+        this.bits = bits;
+    }
+
+    public void add(String key) {
+        long hash = hash64(key);
+        int h1 = (int) hash;
+        int h2 = (int) (hash >>> 32);
+        for (int i = 1; i <= numHashes; i++) {
+            long bit = Math.floorMod(h1 + (long) i * h2, numBits);
+            int word = (int) (bit >>> 6);
+            long mask = 1L << bit;
+            long current;
+            do {
+                current = bits.get(word);
+                if ((current & mask) != 0) {
+                    break;
+                }
+            } while (!bits.compareAndSet(word, current, current | mask));
+        }
+    }
+
+    public boolean mightContain(String key) {
+        long hash = hash64(key);
+        int h1 = (int) hash;
+        int h2 = (int) (hash >>> 32);
+        for (int i = 1; i <= numHashes; i++) {
+            long bit = Math.floorMod(h1 + (long) i * h2, numBits);
+            if ((bits.get((int) (bit >>> 6)) & (1L << bit)) == 0) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    public long getNumBits() {
+        return numBits;
+    }
+
+    public int getNumHashes() {
+        return numHashes;
+    }
+
+    // ------------------ PERSISTENCE ------------------
+
+    public void writeTo(DataOutputStream out) throws IOException {
+        out.writeInt(MAGIC);
+        out.writeLong(numBits);
+        out.writeInt(numHashes);
+        for (int i = 0; i < bits.length(); i++) {
+            out.writeLong(bits.get(i));
+        }
+    }
+
+    public static BloomFilter readFrom(DataInputStream in) throws IOException {
+        if (in.readInt() != MAGIC) {
+            throw new IOException("Not a bloom filter file");
+        }
+        long numBits = in.readLong();
+        int numHashes = in.readInt();
+        if (numBits <= 0 || numBits % 64 != 0 || numHashes <= 0) {
+            throw new IOException("Corrupt bloom filter header");
+        }
+        AtomicLongArray bits = new AtomicLongArray((int) (numBits / 64));
+        for (int i = 0; i < bits.length(); i++) {
+            bits.set(i, in.readLong());
+        }
+        return new BloomFilter(numBits, numHashes, bits);
+    }
+
+    // ------------------ HASHING ------------------
+
+    /**
+     * 64-bit FNV-1a over the UTF-8 bytes, finished with the MurmurHash3 fmix64 step
+     * so both 32-bit halves are well mixed
+     */
+    private static long hash64(String key) {
+        long h = 0xcbf29ce484222325L;
+        for (byte b : key.getBytes(StandardCharsets.UTF_8)) {
+            h ^= (b & 0xff);
+            h *= 0x100000001b3L;
+        }
+        h ^= h >>> 33;
+        h *= 0xff51afd7ed558ccdL;
+        h ^= h >>> 33;
+        h *= 0xc4ceb9fe1a85ec53L;
+        h ^= h >>> 33;
+        return h;
+    }
+}
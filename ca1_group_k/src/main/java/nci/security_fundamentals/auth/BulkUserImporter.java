@@ -0,0 +1,335 @@
+package nci.security_fundamentals.auth;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.NoSuchElementException;
+
+import nci.security_fundamentals.server.db.MongoConnectionManager;
+import nci.security_fundamentals.server.db.UserStore;
+import nci.security_fundamentals.server.db.User_repository;
+import nci.security_fundamentals.server.models.User;
+
+/**
+ * BulkUserImporter - Registers thousands of users in one go
+ *
+ * PURPOSE: Onboarding imports without one registerUser() call per account
+ * POSITION IN ARCHITECTURE: Sits beside AuthService, talks to the UserStore directly
+ *
+ * HOW IT DIFFERS FROM AuthService.registerUser():
+ * - No findByUsername() round trip per user - the unique username/email indexes reject duplicates
+ * - Passwords are hashed in parallel across all CPU cores
+ * - Users are written in batches with one unordered insertMany per batch
+ * - Records are streamed, so only one batch is in memory at a time
+ *
+ * INPUT: Any Iterator of ImportRecord, or a CSV file with lines "username,email,password"
+ *        (an optional "username,email,password" header line is skipped)
+ *
+ * OUTPUT: ImportReport with one RecordResult per input record, in input order
+ */
+public class BulkUserImporter {
+
+    public static final int DEFAULT_BATCH_SIZE = 1000;
+
+    private final UserStore userRepository;
+    private final PasswordEncryptor peq;
+    private final int batchSize;
+
+    public BulkUserImporter(UserStore userRepository) {
+        this(userRepository, DEFAULT_BATCH_SIZE);
+    }
+
+    public BulkUserImporter(UserStore userRepository, int batchSize) {
+        if (batchSize <= 0) {
+            throw new IllegalArgumentException("batchSize must be positive");
+        }
+        this.userRepository = userRepository;
+        this.peq = new PasswordEncryptor();
+        this.batchSize = batchSize;
+    }
+
+    /**
+     * Import users from a CSV file, reading it line by line
+     *
+     * @param csvFile File with one "username,email,password" per line
+     * @return Per-record report
+     */
+    public ImportReport importCsv(Path csvFile) throws IOException {
+        try (BufferedReader reader = Files.newBufferedReader(csvFile, StandardCharsets.UTF_8)) {
+            return importUsers(new CsvRecordIterator(reader));
+        } catch (UncheckedIOException e) {
+            throw e.getCause();
+        }
+    }
+
+    /**
+     * Import users from any source
+     *
+     * PROCESS (per batch):
+     * 1. Pull up to batchSize records from the iterator
+     * 2. Reject records with missing fields (never sent to MongoDB)
+     * 3. Hash passwords in parallel
+     * 4. One unordered insertMany - duplicates come back as write errors
+     *
+     * @param records Records to import, consumed lazily
+     * @return Per-record report
+     */
+    public ImportReport importUsers(Iterator<ImportRecord> records) {
+        for (String problem : userRepository.ensureIndexes()) {
+            System.out.println("[IMPORT] Index problem: " + problem);
+        }
+
+        ImportReport report = new ImportReport();
+        int recordNumber = 0;
+        List<ImportRecord> batch = new ArrayList<>(batchSize);
+
+        while (records.hasNext()) {
+            batch.add(records.next());
+            if (batch.size() == batchSize) {
+                importBatch(batch, recordNumber, report);
+                recordNumber += batch.size();
+                batch.clear();
+            }
+        }
+        if (!batch.isEmpty()) {
+            importBatch(batch, recordNumber, report);
+        }
+
+        return report;
+    }
+
+    private void importBatch(List<ImportRecord> batch, int firstRecordNumber, ImportReport report) {
+        RecordResult[] results = new RecordResult[batch.size()];
+
+        // Validate first so bad rows never cost a hash or a database write
+        List<Integer> validPositions = new ArrayList<>(batch.size());
+        for (int i = 0; i < batch.size(); i++) {
+            ImportRecord record = batch.get(i);
+            if (isBlank(record.getUsername()) || isBlank(record.getEmail()) || isBlank(record.getPassword())) {
+                results[i] = new RecordResult(firstRecordNumber + i + 1, record.getUsername(),
+                        Status.INVALID, "missing username, email or password");
+            } else {
+                validPositions.add(i);
+            }
+        }
+
+        // Hashing is CPU-bound and independent per user, so spread it over all cores
+        List<User> users = validPositions.parallelStream()
+                .map(batch::get)
+                .map(r -> new User(r.getUsername(), r.getEmail(), peq.encryptString(r.getPassword())))
+                .toList();
+
+        Map<Integer, String> failures;
+        try {
+            failures = userRepository.createUsers(new ArrayList<>(users));
+        } catch (Exception e) {
+            // Whole batch failed (e.g. connection lost) - report it against every valid record
+            failures = null;
+            for (int pos : validPositions) {
+                results[pos] = new RecordResult(firstRecordNumber + pos + 1, batch.get(pos).getUsername(),
+                        Status.FAILED, e.getMessage());
+            }
+        }
+
+        if (failures != null) {
+            for (int u = 0; u < users.size(); u++) {
+                int pos = validPositions.get(u);
+                String error = failures.get(u);
+                Status status = error == null ? Status.CREATED
+                        : isDuplicate(error) ? Status.DUPLICATE : Status.FAILED;
+                results[pos] = new RecordResult(firstRecordNumber + pos + 1, users.get(u).getUsername(),
+                        status, error == null ? users.get(u).getId().toHexString() : error);
+            }
+        }
+
+        for (RecordResult result : results) {
+            report.add(result);
+        }
+    }
+
+    private static boolean isDuplicate(String error) {
+        return error.equals(UserStore.DUPLICATE_USERNAME) || error.equals(UserStore.DUPLICATE_EMAIL);
+    }
+
+    private static boolean isBlank(String value) {
+        return value == null || value.isBlank();
+    }
+
+    // ------------------ RESULT TYPES ------------------
+
+    public enum Status {
+        CREATED,    // Inserted
+        DUPLICATE,  // Rejected by the unique username or email index
+        INVALID,    // Missing fields, never sent to the database
+        FAILED      // Any other database error
+    }
+
+    /**
+     * One user to import (plain-text password, hashed by the importer)
+     */
+    public static class ImportRecord {
+        private final String username;
+        private final String email;
+        private final String password;
+
+        public ImportRecord(String username, String email, String password) {
+            this.username = username;
+            this.email = email;
+            this.password = password;
+        }
+
+        public String getUsername() { return username; }
+        public String getEmail() { return email; }
+        public String getPassword() { return password; }
+    }
+
+    /**
+     * Outcome for one input record
+     * detail is the new user id when CREATED, otherwise the reason it was rejected
+     */
+    public static class RecordResult {
+        private final int recordNumber;
+        private final String username;
+        private final Status status;
+        private final String detail;
+
+        RecordResult(int recordNumber, String username, Status status, String detail) {
+            this.recordNumber = recordNumber;
+            this.username = username;
+            this.status = status;
+            this.detail = detail;
+        }
+
+        public int getRecordNumber() { return recordNumber; }
+        public String getUsername() { return username; }
+        public Status getStatus() { return status; }
+        public String getDetail() { return detail; }
+
+        @Override
+        public String toString() {
+            return recordNumber + "," + username + "," + status + "," + detail;
+        }
+    }
+
+    /**
+     * All results of one import, in input order
+     */
+    public static class ImportReport {
+        private final List<RecordResult> results = new ArrayList<>();
+        private final int[] counts = new int[Status.values().length];
+
+        void add(RecordResult result) {
+            results.add(result);
+            counts[result.getStatus().ordinal()]++;
+        }
+
+        public List<RecordResult> getResults() {
+            return Collections.unmodifiableList(results);
+        }
+
+        public int count(Status status) {
+            return counts[status.ordinal()];
+        }
+
+        public int total() {
+            return results.size();
+        }
+
+        @Override
+        public String toString() {
+            return "Imported " + total() + " records: "
+                    + count(Status.CREATED) + " created, "
+                    + count(Status.DUPLICATE) + " duplicate, "
+                    + count(Status.INVALID) + " invalid, "
+                    + count(Status.FAILED) + " failed";
+        }
+    }
+
+    /**
+     * Reads "username,email,password" lines lazily from a reader
+     */
+    private static class CsvRecordIterator implements Iterator<ImportRecord> {
+        private final BufferedReader reader;
+        private String nextLine;
+        private boolean firstLine = true;
+
+        CsvRecordIterator(BufferedReader reader) {
+            this.reader = reader;
+            advance();
+        }
+
+        private void advance() {
+            try {
+                do {
+                    nextLine = reader.readLine();
+                    if (firstLine && nextLine != null && nextLine.trim().equalsIgnoreCase("username,email,password")) {
+                        nextLine = reader.readLine();
+                    }
+                    firstLine = false;
+                } while (nextLine != null && nextLine.isBlank());
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+        }
+
+        @Override
+        public boolean hasNext() {
+            return nextLine != null;
+        }
+
+        @Override
+        public ImportRecord next() {
+            if (nextLine == null) {
+                throw new NoSuchElementException();
+            }
+            // Password is the last column so it may itself contain commas
+            String[] parts = nextLine.split(",", 3);
+            advance();
+            return new ImportRecord(
+                    parts[0].trim(),
+                    parts.length > 1 ? parts[1].trim() : null,
+                    parts.length > 2 ? parts[2] : null);
+        }
+    }
+
+    /**
+     * Command line import: BulkUserImporter users.csv [report.csv]
+     * Prints a summary and writes the per-record report if a second path is given
+     */
+    public static void main(String[] args) throws IOException {
+        if (args.length < 1) {
+            System.out.println("Usage: BulkUserImporter <users.csv> [report.csv]");
+            return;
+        }
+
+        try (MongoConnectionManager mongo = MongoConnectionManager.getInstance()) {
+            User_repository repository = new User_repository(mongo.getDatabase());
+            BulkUserImporter importer = new BulkUserImporter(repository);
+
+            long start = System.currentTimeMillis();
+            ImportReport report = importer.importCsv(Paths.get(args[0]));
+            long elapsed = System.currentTimeMillis() - start;
+
+            System.out.println("[IMPORT] " + report + " in " + elapsed + " ms");
+
+            if (args.length > 1) {
+                List<String> lines = new ArrayList<>(report.total() + 1);
+                lines.add("record,username,status,detail");
+                for (RecordResult result : report.getResults()) {
+                    lines.add(result.toString());
+                }
+                Files.write(Paths.get(args[1]), lines, StandardCharsets.UTF_8);
+                System.out.println("[IMPORT] Report written to " + args[1]);
+            }
+        }
+    }
+}
@@ -1,6 +1,7 @@
 package nci.security_fundamentals.auth;
 
 import java.util.Date;
+import java.util.UUID;
 
 import com.auth0.jwt.JWT;
 import com.auth0.jwt.JWTVerifier;
@@ -9,6 +10,10 @@ import com.auth0.jwt.exceptions.JWTVerificationException;
 import com.auth0.jwt.interfaces.DecodedJWT;
 
 import nci.security_fundamentals.config.EnvConfig;
+import org.bson.types.ObjectId;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
 import nci.security_fundamentals.server.models.User;
 
 /**
@@ -41,6 +46,7 @@ import nci.security_fundamentals.server.models.User;
  * - If token is modified, signature verification fails
  */
 public class JwtService {
+    private static final Logger log = LoggerFactory.getLogger(JwtService.class);
 
     private static final long EXPIRATION_TIME = 24 * 60 * 60 * 1000; // 24 hours in milliseconds
     private final Algorithm algorithm;  // HMAC256 signing algorithm
@@ -60,6 +66,7 @@ public class JwtService {
      * 
      * TOKEN CONTENTS (Claims):
      * - Issuer: "LockTalk" (our app name)
+     * - JWT ID: Random UUID, lets a single token be revoked
      * - Subject: User's MongoDB ObjectId
      * - username: User's username
      * - email: User's email
@@ -72,6 +79,14 @@ public class JwtService {
      * @return JWT token string
      */
     public String getToken(User user) {
+        return getToken(user.getId(), user.getUsername(), user.getEmail());
+    }
+
+    /**
+     * Generate a JWT token from just the claim values
+     * Lets login build a token from a projected UserAuthView instead of a full User
+     */
+    public String getToken(ObjectId userId, String username, String email) {
         Date now = new Date();
         Date expiresAt = new Date(now.getTime() + EXPIRATION_TIME);
         String token = "";
@@ -79,9 +94,10 @@ public class JwtService {
         try {
             token = JWT.create()
                     .withIssuer("LockTalk")
-                    .withSubject(user.getId().toString())
-                    .withClaim("username", user.getUsername())
-                    .withClaim("email", user.getEmail())
+                    .withJWTId(UUID.randomUUID().toString())
+                    .withSubject(userId.toString())
+                    .withClaim("username", username)
+                    .withClaim("email", email)
                     .withIssuedAt(now)
                     .withExpiresAt(expiresAt)
                     .sign(algorithm);
@@ -134,7 +150,7 @@ public class JwtService {
             Date expiresAt = jwt.getExpiresAt();
             return expiresAt.before(new Date());
         } catch (JWTVerificationException e) {
-            System.err.println("Cannot check expiration: " + e.getMessage());
+            log.warn("Cannot check expiration: {}", e.getMessage());
             return true;
         }
     }
@@ -4,11 +4,9 @@ import java.nio.file.Files;
 import java.nio.file.Path;
 import java.nio.file.Paths;
 
-import com.mongodb.client.MongoClient;
-import com.mongodb.client.MongoClients;
 import com.mongodb.client.MongoDatabase;
 
-import nci.security_fundamentals.config.EnvConfig;
+import nci.security_fundamentals.server.db.MongoConnectionManager;
 import nci.security_fundamentals.server.db.User_repository;
 
 /**
@@ -18,7 +16,7 @@ import nci.security_fundamentals.server.db.User_repository;
  * THINK OF IT AS: The receptionist who directs you to the right department
  * 
  * ARCHITECTURE FLOW:
- * 1. LoginHandler creates/manages the MongoDB connection
+ * 1. LoginHandler gets the shared MongoDB connection from MongoConnectionManager
  * 2. Passes database to User_repository (database access layer)
  * 3. Passes User_repository to AuthService (business logic layer)
  * 4. AuthService uses JwtService internally for token operations
@@ -51,20 +49,16 @@ public class LoginHandler {
      * Constructor - Sets up the entire authentication system
      * 
      * WHAT HAPPENS HERE:
-     * 1. Loads MongoDB credentials from .env file (via EnvConfig)
-     * 2. Creates MongoDB client and connects to database
-     * 3. Initializes User_repository with database connection
-     * 4. Initializes AuthService with User_repository
+     * 1. Gets the database from the shared MongoConnectionManager
+     *    (one pool per process, settings from .env)
+     * 2. Initializes User_repository with database connection
+     * 3. Initializes AuthService with User_repository
      * 
      * This is the "startup" phase - connecting all the pieces
      */
     public LoginHandler() {
         try {
-            String connectionString = EnvConfig.getRequired("MONGODB_CONNECTION_STRING");
-            String databaseName = EnvConfig.getRequired("MONGODB_DATABASE_NAME");
-            
-            MongoClient mongoClient = MongoClients.create(connectionString);
-            database = mongoClient.getDatabase(databaseName);
+            database = MongoConnectionManager.getInstance().getDatabase();
             userRepo = new User_repository(database);
             authService = new AuthService(userRepo);
 
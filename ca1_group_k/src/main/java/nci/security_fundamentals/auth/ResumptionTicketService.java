@@ -0,0 +1,144 @@
+package nci.security_fundamentals.auth;
+
+import java.nio.charset.StandardCharsets;
+import java.security.SecureRandom;
+import java.util.Base64;
+
+import nci.security_fundamentals.config.EnvConfig;
+import nci.security_fundamentals.security.HmacEngine;
+
+/**
+ * ResumptionTicketService - Fast reconnect without a JWT check or database lookup
+ *
+ * PURPOSE: After a full JWT handshake the server hands the client a short-lived ticket.
+ *          Presenting it on reconnect proves "this server already authenticated me".
+ * USED BY: ClientHandler (issue after AUTH_SUCCESS, verify on RESUME)
+ *
+ * TICKET FORMAT:
+ *   base64url(userId|base64url(username)|expiresAtMillis|notAfterMillis|historyBase) "." base64url(HMAC-SHA256 of the payload)
+ * notAfter is the expiry of the JWT the session started with. A resumed session gets a
+ * fresh ticket, but it carries the same notAfter, so chaining tickets cannot outlive it.
+ * historyBase is the history position the session's first replay started at - the
+ * client's cursor counts from there (see ChatServer.getHistoryStart()).
+ *
+ * WHY IT IS CHEAP:
+ * - One HMAC over ~60 bytes with a per-thread, pre-keyed Mac
+ * - No JWT parsing, no MongoDB round trip
+ *
+ * SECURITY:
+ * - Only the server holds the MAC key, so clients cannot forge or extend tickets
+ * - Key comes from RESUMPTION_TICKET_KEY in .env, or is random per server start
+ *   (a restart then simply invalidates all tickets and clients fall back to their JWT)
+ * - Tickets expire after RESUMPTION_TICKET_TTL_SECONDS (default 10 minutes), and never
+ *   after the original JWT - once that has expired the client must log in again
+ * - MAC comparison is constant-time
+ */
+public class ResumptionTicketService {
+
+    private static final long DEFAULT_TTL_SECONDS = 10 * 60;
+
+    private final HmacEngine hmac;
+    private final long ttlMillis;
+
+    public ResumptionTicketService() {
+        String configuredKey = EnvConfig.get("RESUMPTION_TICKET_KEY");
+        byte[] keyBytes;
+        if (configuredKey != null) {
+            keyBytes = configuredKey.getBytes(StandardCharsets.UTF_8);
+        } else {
+            keyBytes = new byte[32];
+            new SecureRandom().nextBytes(keyBytes);
+        }
+        this.hmac = new HmacEngine(keyBytes);
+
+        this.ttlMillis = EnvConfig.getLong("RESUMPTION_TICKET_TTL_SECONDS", DEFAULT_TTL_SECONDS) * 1000;
+    }
+
+    /**
+     * Issue a ticket for an authenticated user
+     *
+     * @param userId   The user's MongoDB ObjectId as hex
+     * @param username The username the session was authenticated as
+     * @param notAfter Expiry of the session's JWT (millis) - the ticket never outlives it
+     * @param historyBase History position the session's history cursor counts from
+     * @return Ticket string to send to the client
+     */
+    public String issue(String userId, String username, long notAfter, long historyBase) {
+        long expiresAt = Math.min(System.currentTimeMillis() + ttlMillis, notAfter);
+        String payload = userId + "|"
+                + Base64.getUrlEncoder().withoutPadding().encodeToString(username.getBytes(StandardCharsets.UTF_8))
+                + "|" + expiresAt + "|" + notAfter + "|" + historyBase;
+        byte[] payloadBytes = payload.getBytes(StandardCharsets.UTF_8);
+
+        return Base64.getUrlEncoder().withoutPadding().encodeToString(payloadBytes)
+                + "." + Base64.getUrlEncoder().withoutPadding().encodeToString(hmac.mac(payloadBytes));
+    }
+
+    /**
+     * Verify a ticket presented on reconnect
+     *
+     * CHECKS:
+     * 1. MAC matches (ticket was issued by this server and not modified)
+     * 2. Ticket has not expired
+     *
+     * @return The resumed session, or null if the ticket is invalid or expired
+     */
+    public Session verify(String ticket) {
+        if (ticket == null) {
+            return null;
+        }
+        int dot = ticket.indexOf('.');
+        if (dot <= 0) {
+            return null;
+        }
+
+        try {
+            byte[] payloadBytes = Base64.getUrlDecoder().decode(ticket.substring(0, dot));
+            byte[] receivedMac = Base64.getUrlDecoder().decode(ticket.substring(dot + 1));
+            if (!hmac.verify(payloadBytes, receivedMac)) {
+                return null;
+            }
+
+            String[] fields = new String(payloadBytes, StandardCharsets.UTF_8).split("\\|", 5);
+            if (fields.length != 5) {
+                return null;
+            }
+            long expiresAt = Long.parseLong(fields[2]);
+            long notAfter = Long.parseLong(fields[3]);
+            long historyBase = Long.parseLong(fields[4]);
+            if (expiresAt < System.currentTimeMillis()) {
+                return null;
+            }
+            String username = new String(Base64.getUrlDecoder().decode(fields[1]), StandardCharsets.UTF_8);
+            return new Session(fields[0], username, expiresAt, notAfter, historyBase);
+        } catch (IllegalArgumentException e) {
+            // Bad Base64 or a non-numeric expiry - treat as forged
+            return null;
+        }
+    }
+
+    /**
+     * Identity recovered from a valid ticket
+     */
+    public static class Session {
+        private final String userId;
+        private final String username;
+        private final long expiresAt;
+        private final long notAfter;
+        private final long historyBase;
+
+        Session(String userId, String username, long expiresAt, long notAfter, long historyBase) {
+            this.userId = userId;
+            this.username = username;
+            this.expiresAt = expiresAt;
+            this.notAfter = notAfter;
+            this.historyBase = historyBase;
+        }
+
+        public String getUserId() { return userId; }
+        public String getUsername() { return username; }
+        public long getExpiresAt() { return expiresAt; }
+        public long getNotAfter() { return notAfter; }
+        public long getHistoryBase() { return historyBase; }
+    }
+}
@@ -0,0 +1,349 @@
+package nci.security_fundamentals.auth;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+import org.bson.Document;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.mongodb.client.MongoCollection;
+import com.mongodb.client.MongoDatabase;
+import com.mongodb.client.model.Filters;
+import com.mongodb.client.model.IndexOptions;
+import com.mongodb.client.model.Indexes;
+import com.mongodb.client.model.Projections;
+import com.mongodb.client.model.ReplaceOptions;
+
+import nci.security_fundamentals.config.EnvConfig;
+
+/**
+ * TokenRevocationList - Revoke JWTs before they expire
+ *
+ * PURPOSE: JWTs are valid for 24 hours. This lets the server reject a single token
+ *          (by its jti) or every token of a user (e.g. after deactivateUser) right away.
+ * USED BY: AuthService during the handshake
+ *
+ * TWO-LEVEL CHECK:
+ * 1. Bloom filter in memory - "definitely not revoked" for almost every handshake,
+ *    no database access at all
+ * 2. Only when the filter says "maybe", an exact lookup in the revoked_tokens collection
+ *
+ * DURABLE STORE (MongoDB "revoked_tokens"):
+ *   { _id: "jti:<tokenId>" | "user:<userId>", revokedAt: Date, expiresAt: Date }
+ *   A TTL index on expiresAt drops entries once every affected token has expired anyway.
+ *
+ * IN-MEMORY STORE (inMemory(), used with USER_STORE_BACKEND=memory):
+ *   Same entries in a ConcurrentHashMap; expired ones are dropped on each rebuild.
+ *   Revocations last until the process ends.
+ *
+ * FILTER LIFECYCLE:
+ * - Saved to REVOCATION_FILTER_PATH (default revocation.bloom) after every rebuild
+ * - Loaded from that file on startup, so the fast path works before the first rebuild
+ * - Rebuilt from the store every REVOCATION_REBUILD_MINUTES (default 10), which also
+ *   drops expired entries and picks up revocations made by other servers
+ */
+public final class TokenRevocationList implements AutoCloseable {
+    private static final Logger log = LoggerFactory.getLogger(TokenRevocationList.class);
+
+    private static final double FALSE_POSITIVE_RATE = 0.01;
+    private static final long MIN_CAPACITY = 10_000;
+    private static final long TOKEN_LIFETIME_MS = 24 * 60 * 60 * 1000; // matches JwtService
+
+    private final RevocationStore store;
+    private final Path filterPath;
+    private final ScheduledExecutorService rebuildScheduler;
+
+    private volatile BloomFilter filter;
+    // Keys revoked while a rebuild is scanning the store - re-added to the new filter
+    private final Set<String> revokedDuringRebuild = ConcurrentHashMap.newKeySet();
+    private volatile boolean rebuilding;
+    // store() and the filter swap take this, so a revocation lands in the old filter AND the
+    // set, or in the new filter - never in a set that has already been drained
+    private final Object swapLock = new Object();
+
+    public TokenRevocationList(MongoDatabase database) {
+        this(new MongoRevocationStore(database));
+    }
+
+    /**
+     * Revocation list without MongoDB - for the in-memory user store backend
+     */
+    public static TokenRevocationList inMemory() {
+        return new TokenRevocationList(new MemoryRevocationStore());
+    }
+
+    private TokenRevocationList(RevocationStore store) {
+        this.store = store;
+
+        String path = EnvConfig.get("REVOCATION_FILTER_PATH");
+        this.filterPath = Paths.get(path != null ? path : "revocation.bloom");
+
+        this.filter = loadFilter();
+
+        long rebuildMinutes = EnvConfig.getLong("REVOCATION_REBUILD_MINUTES", 10);
+
+        this.rebuildScheduler = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread t = new Thread(r, "revocation-rebuild");
+            t.setDaemon(true);
+            return t;
+        });
+        // First rebuild right away in the background, then periodically
+        rebuildScheduler.scheduleWithFixedDelay(this::safeRebuild, 0, rebuildMinutes, TimeUnit.MINUTES);
+    }
+
+    // ------------------ CHECKS ------------------
+
+    /**
+     * Is this token revoked, either by its own id or because its user was revoked after it was issued?
+     *
+     * @param tokenId  The token's jti claim (null for tokens issued before jti existed)
+     * @param userId   The token's subject
+     * @param issuedAt The token's iat claim
+     */
+    public boolean isRevoked(String tokenId, String userId, Date issuedAt) {
+        String tokenKey = tokenId != null ? tokenKey(tokenId) : null;
+        String userKey = userKey(userId);
+
+        boolean tokenMaybe = tokenKey != null && filter.mightContain(tokenKey);
+        boolean userMaybe = filter.mightContain(userKey);
+        if (!tokenMaybe && !userMaybe) {
+            return false; // fast path - no database access
+        }
+
+        if (tokenMaybe && store.find(tokenKey) != null) {
+            return true;
+        }
+        if (userMaybe) {
+            Document userEntry = store.find(userKey);
+            if (userEntry != null) {
+                Date revokedAt = userEntry.getDate("revokedAt");
+                return issuedAt == null || revokedAt == null || !issuedAt.after(revokedAt);
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Is every session of this user revoked? Used for resumption tickets, which carry no issue time
+     */
+    public boolean isUserRevoked(String userId) {
+        String userKey = userKey(userId);
+        if (!filter.mightContain(userKey)) {
+            return false;
+        }
+        return store.find(userKey) != null;
+    }
+
+    // ------------------ REVOCATION ------------------
+
+    /**
+     * Revoke a single token until it would have expired
+     */
+    public void revokeToken(String tokenId, Date expiresAt) {
+        store(tokenKey(tokenId), expiresAt != null ? expiresAt : new Date(System.currentTimeMillis() + TOKEN_LIFETIME_MS));
+    }
+
+    /**
+     * Revoke every token issued to a user up to now
+     * The entry outlives the longest possible token, then the TTL index removes it.
+     */
+    public void revokeUser(String userId) {
+        store(userKey(userId), new Date(System.currentTimeMillis() + TOKEN_LIFETIME_MS));
+    }
+
+    private void store(String key, Date expiresAt) {
+        Document entry = new Document("_id", key)
+                .append("revokedAt", new Date())
+                .append("expiresAt", expiresAt);
+        store.put(key, entry);
+
+        // Visible to this server's handshakes immediately, not only after the next rebuild
+        synchronized (swapLock) {
+            filter.add(key);
+            if (rebuilding) {
+                revokedDuringRebuild.add(key);
+            }
+        }
+    }
+
+    // ------------------ FILTER REBUILD ------------------
+
+    /**
+     * Build a fresh filter from the store and swap it in
+     * Expired entries are gone from the store, so they also leave the filter here.
+     */
+    public void rebuild() throws IOException {
+        synchronized (swapLock) {
+            rebuilding = true;
+        }
+        BloomFilter fresh;
+        try {
+            Date now = new Date();
+            List<String> live = store.liveKeys(now);
+            fresh = new BloomFilter(Math.max(MIN_CAPACITY, live.size() * 2L), FALSE_POSITIVE_RATE);
+
+            for (String key : live) {
+                fresh.add(key);
+            }
+            synchronized (swapLock) {
+                // Revocations that landed in the old filter while we were scanning
+                for (String key : revokedDuringRebuild) {
+                    fresh.add(key);
+                }
+                filter = fresh;
+                revokedDuringRebuild.clear();
+                rebuilding = false;
+            }
+        } finally {
+            synchronized (swapLock) {
+                // Failed scan: the old filter stays and already has everything in the set
+                rebuilding = false;
+                revokedDuringRebuild.clear();
+            }
+        }
+        saveFilter(fresh);
+    }
+
+    private void safeRebuild() {
+        try {
+            rebuild();
+        } catch (Exception e) {
+            // Keep using the old filter - it can only be missing entries revoked elsewhere
+            log.error("[REVOCATION] Filter rebuild failed: {}", e.getMessage());
+        }
+    }
+
+    private BloomFilter loadFilter() {
+        if (Files.exists(filterPath)) {
+            try (DataInputStream in = new DataInputStream(new BufferedInputStream(Files.newInputStream(filterPath)))) {
+                BloomFilter loaded = BloomFilter.readFrom(in);
+                log.info("[REVOCATION] Loaded revocation filter from {}", filterPath);
+                return loaded;
+            } catch (IOException e) {
+                log.warn("[REVOCATION] Ignoring unreadable filter file: {}", e.getMessage());
+            }
+        }
+        // No saved filter yet - until the first rebuild, fall back to checking the store on every handshake
+        return new AllMatchingFilter();
+    }
+
+    private void saveFilter(BloomFilter toSave) throws IOException {
+        Path tmp = filterPath.resolveSibling(filterPath.getFileName() + ".tmp");
+        try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(tmp)))) {
+            toSave.writeTo(out);
+        }
+        Files.move(tmp, filterPath, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+    }
+
+    @Override
+    public void close() {
+        rebuildScheduler.shutdownNow();
+    }
+
+    private static String tokenKey(String tokenId) {
+        return "jti:" + tokenId;
+    }
+
+    private static String userKey(String userId) {
+        return "user:" + userId;
+    }
+
+    // ------------------ STORES ------------------
+
+    /**
+     * Where revocation entries ({ _id, revokedAt, expiresAt }) are kept
+     */
+    private interface RevocationStore {
+        Document find(String key);
+
+        void put(String key, Document entry);
+
+        /** Keys of entries that have not expired yet (expired ones may be dropped here) */
+        List<String> liveKeys(Date now);
+    }
+
+    private static class MongoRevocationStore implements RevocationStore {
+        private final MongoCollection<Document> collection;
+
+        MongoRevocationStore(MongoDatabase database) {
+            this.collection = database.getCollection("revoked_tokens");
+            this.collection.createIndex(Indexes.ascending("expiresAt"),
+                    new IndexOptions().expireAfter(0L, TimeUnit.SECONDS));
+        }
+
+        @Override
+        public Document find(String key) {
+            return collection.find(Filters.eq("_id", key)).first();
+        }
+
+        @Override
+        public void put(String key, Document entry) {
+            collection.replaceOne(Filters.eq("_id", key), entry, new ReplaceOptions().upsert(true));
+        }
+
+        @Override
+        public List<String> liveKeys(Date now) {
+            List<String> keys = new ArrayList<>();
+            for (Document doc : collection.find(Filters.gt("expiresAt", now))
+                    .projection(Projections.include("_id"))) {
+                keys.add(doc.getString("_id"));
+            }
+            return keys;
+        }
+    }
+
+    private static class MemoryRevocationStore implements RevocationStore {
+        private final Map<String, Document> entries = new ConcurrentHashMap<>();
+
+        @Override
+        public Document find(String key) {
+            Document entry = entries.get(key);
+            // Same as the TTL index: an expired entry no longer counts
+            return entry != null && entry.getDate("expiresAt").after(new Date()) ? entry : null;
+        }
+
+        @Override
+        public void put(String key, Document entry) {
+            entries.put(key, entry);
+        }
+
+        @Override
+        public List<String> liveKeys(Date now) {
+            entries.values().removeIf(entry -> !entry.getDate("expiresAt").after(now));
+            return new ArrayList<>(entries.keySet());
+        }
+    }
+
+    /**
+     * Stand-in used only before the first filter exists: says "maybe" for everything,
+     * so no revocation is missed while the store has not been scanned yet
+     */
+    private static class AllMatchingFilter extends BloomFilter {
+        AllMatchingFilter() {
+            super(1, 0.5);
+        }
+
+        @Override
+        public boolean mightContain(String key) {
+            return true;
+        }
+    }
+
+}
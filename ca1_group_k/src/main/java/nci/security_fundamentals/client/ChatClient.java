@@ -1,21 +1,50 @@
 package nci.security_fundamentals.client;
 
-import nci.security_fundamentals.auth.LoginHandler;
 import nci.security_fundamentals.config.EnvConfig;
 import nci.security_fundamentals.config.HMACUtils;
+import nci.security_fundamentals.security.AesGcmUtils;
 import nci.security_fundamentals.security.AesUtils;
 
 import javax.crypto.SecretKey;
 import javax.crypto.spec.SecretKeySpec;
 import java.util.Base64;
 import java.io.*;
+import java.net.InetSocketAddress;
 import java.net.Socket;
+import java.nio.file.Paths;
+import java.security.GeneralSecurityException;
 import java.util.Scanner;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
 
 /**
  * ChatClient - Handles user registration, login, and chat communication.
  * Connects to ChatServer over TCP and uses JWT for authentication.
- * Each message is signed with HMAC-SHA256 for integrity.
+ * Login and registration are requests on the same socket - the client never
+ * talks to MongoDB and the JWT is only kept in memory.
+ * Chat messages are sent in AES-GCM when the server accepts it (one frame, the tag covers
+ * integrity); otherwise in AES-CBC followed by an HMAC-SHA256 frame.
+ * "/sendfile <path>" shares a file in encrypted chunks (FileTransferManager) while chat
+ * carries on; received files go to FILE_DOWNLOAD_DIR (.env, default "downloads").
+ *
+ * Reconnect: when the connection drops, a background thread reconnects with exponential
+ * backoff and full jitter (so a server restart is not met by every client at once) and
+ * resumes with the ticket - only the messages missed since historyCursor are replayed.
+ * Typing never waits for the network: messages go into the Outbox (send() does the same
+ * for programmatic callers) and a sender thread encrypts whatever has queued up and
+ * writes it with one flush - a pasted block of lines becomes one socket write, not one
+ * per line. Whatever the server has not acknowledged is sent again after a reconnect.
+ *
+ * SETTINGS (.env):
+ * - RECONNECT_BASE_MS     first backoff step (default 500)
+ * - RECONNECT_MAX_MS      longest wait between attempts (default 30000)
+ * - CONNECT_TIMEOUT_MS    TCP connect and handshake timeout (default 5000)
+ * - OUTBOX_MAX_MESSAGES   see Outbox
+ * - DECRYPT_THREADS       workers decrypting incoming messages (default: CPU cores, at most 4)
+ *
+ * Receiving: the listener thread only reads frames; chat messages are decrypted on a small
+ * worker pool and printed in arrival order by ReceivePipeline.
  */
 public class ChatClient {
     private SecretKey aesKey;
@@ -24,19 +53,43 @@ public class ChatClient {
     private Socket socket;
     private ObjectOutputStream out;
     private ObjectInputStream in;
-    private LoginHandler loginHandler;
+    private volatile boolean authenticated;                          // true once AUTH_SUCCESS was received on this socket
+    private String username;
+    private String token;
+    private String resumptionTicket;                                 // issued by the server after AUTH_SUCCESS
+    private final AtomicInteger historyCursor = new AtomicInteger(); // chat messages seen so far
+    private String gcmSessionId;                                     // null = server chose CBC-HMAC
+    private long sendSeq;                                            // chat messages sent on this connection (= GCM seq)
+    private long connectionId;                                       // bumped by openSocket - tells outbox acks apart
+    private final Object writeLock = new Object();                   // chat messages and file chunks share the stream
+    private FileTransferManager files;
+    private Outbox outbox;
+    private ReceivePipeline incoming;
+    private final AtomicBoolean reconnecting = new AtomicBoolean();
+    private volatile boolean closing;                                // /quit - do not reconnect
 
     public ChatClient(String serverIp, int port) {
         this.serverIp = serverIp;
         this.port = port;
-        this.loginHandler = new LoginHandler();
     }
 
     // ------------------ AUTH METHODS ------------------
 
+    /**
+     * Ask the server to create an account
+     * Sends "REGISTER", username, email, AES(password) and waits for the answer.
+     */
     public String register(String username, String email, String password) {
         try {
-            String result = loginHandler.registerUser(username, password, email);
+            ensureHandshakeConnection();
+            out.writeObject("REGISTER");
+            out.writeObject(username);
+            out.writeObject(email);
+            out.writeObject(AesUtils.encrypt(aesKey, password));
+            out.flush();
+
+            String response = (String) in.readObject();
+            String result = response.substring(response.indexOf(':') + 1);
             System.out.println(result);
             return result;
         } catch (Exception e) {
@@ -45,15 +98,28 @@ public class ChatClient {
         }
     }
 
+    /**
+     * Ask the server for a JWT
+     * Sends "LOGIN", username, AES(password); the token stays in memory only.
+     */
     public String login(String username, String password) {
         try {
-            String token = loginHandler.login(username, password);
+            ensureHandshakeConnection();
+            out.writeObject("LOGIN");
+            out.writeObject(username);
+            out.writeObject(AesUtils.encrypt(aesKey, password));
+            out.flush();
+
+            String response = (String) in.readObject();
+            String token = response.startsWith("LOGIN_SUCCESS:")
+                    ? response.substring("LOGIN_SUCCESS:".length())
+                    : null;
             if (token != null && token.startsWith("ey")) { // JWTs start with 'eyJ'
                 System.out.println("[CLIENT] Received JWT token from server.");
 
                 return token;
             } else {
-                System.out.println("[CLIENT] Invalid login response: " + token);
+                System.out.println("[CLIENT] Invalid login response: " + response);
                 return null;
             }
         } catch (Exception e) {
@@ -62,84 +128,82 @@ public class ChatClient {
         }
     }
 
-    // ------------------ CHAT METHODS ------------------
+    /**
+     * Make sure we have an open, not-yet-authenticated socket for LOGIN/REGISTER requests
+     */
+    private void ensureHandshakeConnection() throws Exception {
+        if (aesKey == null && !loadAesKey()) {
+            throw new IllegalStateException("AES key not available");
+        }
+        if (socket == null || socket.isClosed() || authenticated) {
+            openSocket();
+        }
+    }
 
-    public void startChat(String username, String token, Scanner scanner) {
+    private boolean loadAesKey() {
         try {
-            socket = new Socket(serverIp, port);
-            out = new ObjectOutputStream(socket.getOutputStream());
-            out.flush();
-            in = new ObjectInputStream(socket.getInputStream());
 
-            // send jwt token for auth
-            out.writeObject(token);
-            out.flush();
+            String base64Key = EnvConfig.getRequired("AES_SECRET_KEY");
 
-            //⃣ Wait for server to confirm authentication
-            String authResponse = (String) in.readObject();
-            if (!"AUTH_SUCCESS".equals(authResponse)) {
-                System.out.println("[CLIENT] Authentication failed: " + authResponse);
-                socket.close();
-                return;
-            }
-            try {
 
-                String base64Key = EnvConfig.getRequired("AES_SECRET_KEY");
+            byte[] decodedKey = Base64.getDecoder().decode(base64Key);
 
 
-                byte[] decodedKey = Base64.getDecoder().decode(base64Key);
+            aesKey = new SecretKeySpec(decodedKey, 0, decodedKey.length, "AES");
 
 
-                aesKey = new SecretKeySpec(decodedKey, 0, decodedKey.length, "AES");
+            System.out.println("[DEBUG] AES key length (bytes): " + aesKey.getEncoded().length);
+            return true;
+        } catch (Exception e) {
+            System.out.println("[ERROR] Failed to load AES key: " + e.getMessage());
+            return false;
+        }
+    }
+
+    private void openSocket() throws IOException {
+        if (socket != null && !socket.isClosed()) {
+            socket.close();
+        }
+
+        int timeout = EnvConfig.getInt("CONNECT_TIMEOUT_MS", 5000);
+        Socket newSocket = new Socket();
+        newSocket.connect(new InetSocketAddress(serverIp, port), timeout);
+        newSocket.setKeepAlive(true);
+        // Under the write lock, so an upload thread never writes into the handshake
+        synchronized (writeLock) {
+            authenticated = false;
+            connectionId++;
+            socket = newSocket;
+            // Buffered: frames written between two flush() calls leave in one socket write
+            out = new ObjectOutputStream(new BufferedOutputStream(socket.getOutputStream(), 64 * 1024));
+            out.flush();
+            in = new ObjectInputStream(socket.getInputStream());
+        }
+    }
 
+    // ------------------ CHAT METHODS ------------------
 
-                System.out.println("[DEBUG] AES key length (bytes): " + aesKey.getEncoded().length);
-            } catch (Exception e) {
-                System.out.println("[ERROR] Failed to load AES key: " + e.getMessage());
+    public void startChat(String username, String token, Scanner scanner) {
+        this.username = username;
+        this.token = token;
+        try {
+            if (aesKey == null && !loadAesKey()) {
                 return; // stop if key fails to load
             }
-            // successful auth
-            System.out.println("[CLIENT] Authentication successful! You are now in chat mode.");
-
-            // Start listener thread for incoming messages
-            try {
-                Thread listener = new Thread(() -> {
-                    try {
-                        Object input;
-                        while ((input = in.readObject()) != null) {
-                            String encrypted = (String) input;
-                            try {
-                                if (encrypted.startsWith("[SERVER]")) {
-                                    System.out.println(encrypted);
-                                } else {
-                                    try {
-                                        // Split the incoming message at the first colon
-                                        String[] parts = encrypted.split(":", 2);
-                                        if (parts.length == 2) {
-                                            String sender = parts[0].trim();
-                                            String cipherText = parts[1].trim();
-                                            String decrypted = AesUtils.decrypt(aesKey, cipherText);
-                                            System.out.println("[" + sender + "] " + decrypted);
-                                        } else {
-                                            System.out.println(encrypted);
-                                        }
-                                    } catch (Exception ex) {
-                                        System.out.println(encrypted);
-                                    }
+            String downloadDir = EnvConfig.get("FILE_DOWNLOAD_DIR");
+            files = new FileTransferManager(aesKey, username, this::writeFrame,
+                    Paths.get(downloadDir != null && !downloadDir.isBlank() ? downloadDir.trim() : "downloads"));
+            outbox = new Outbox(EnvConfig.getInt("OUTBOX_MAX_MESSAGES", 1000));
+            incoming = new ReceivePipeline(
+                    EnvConfig.getInt("DECRYPT_THREADS", Math.min(4, Runtime.getRuntime().availableProcessors())),
+                    256, System.out::println);
 
-                                }
-                            } catch (Exception ex) {
-                                System.out.println(encrypted);
-                            }
-                        }
-                    } catch (Exception e) {
-                        System.out.println("[CLIENT] Disconnected from server.");
-                    }
-                });
-                listener.start();
-            } catch (Exception e) {
-                System.out.println("[CLIENT] Listener error: " + e.getMessage());
+            if (!connect()) {
+                return;
             }
+            // successful auth
+            System.out.println("[CLIENT] Authentication successful! You are now in chat mode.");
+            startSender();
 
 
             // message send loop
@@ -148,20 +212,23 @@ public class ChatClient {
                 String message = scanner.nextLine();
                 if (message.equalsIgnoreCase("/quit")) {
                     System.out.println("[CLIENT] Disconnecting...");
+                    flushOutbox(); // what was typed before /quit still goes out
+                    closing = true;
                     break;
                 }
+                if (message.startsWith("/sendfile ")) {
+                    try {
+                        files.send(Paths.get(message.substring("/sendfile ".length()).trim()));
+                    } catch (Exception e) {
+                        System.out.println("[FILE] Cannot send: " + e.getMessage());
+                    }
+                    continue;
+                }
 
-                try {
-                    // Encrypt the message before sending
-                    String encrypted = AesUtils.encrypt(aesKey, message);
-                    // Generate HMAC after encryption
-                    String hmac = HMACUtils.generateHMAC(username + ": " + encrypted);
-
-                    out.writeObject(encrypted);
-                    out.writeObject(hmac);
-                    out.flush();
-                } catch (Exception e) {
-                    System.out.println("[CLIENT] Encryption failed: " + e.getMessage());
+                if (!send(message)) {
+                    System.out.println("[CLIENT] Outbox full (" + outbox.size() + " unsent) - message not queued.");
+                } else if (!authenticated) {
+                    System.out.println("[CLIENT] Offline - message queued (" + outbox.size() + " waiting).");
                 }
             }
 
@@ -172,7 +239,325 @@ public class ChatClient {
         }
     }
 
+    /**
+     * Queue a chat message for the sender thread - never blocks on the network
+     * @return false if the outbox is full
+     */
+    public boolean send(String message) {
+        return outbox != null && outbox.add(message) != null;
+    }
+
+    /**
+     * One sender thread per chat session: wait for new messages, send the whole batch
+     */
+    private void startSender() {
+        Thread sender = new Thread(() -> {
+            try {
+                while (!closing) {
+                    outbox.awaitAdded();
+                    if (!closing) {
+                        flushOutbox();
+                    }
+                }
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }, "chat-sender");
+        sender.setDaemon(true);
+        sender.start();
+    }
+
+    /**
+     * Send every outbox message not yet sent on this connection, oldest first
+     * @return false if not connected (they stay queued for the reconnect)
+     */
+    private boolean flushOutbox() {
+        synchronized (writeLock) {
+            if (!authenticated) {
+                return false;
+            }
+            try {
+                for (Outbox.Entry entry : outbox.unsent(connectionId)) {
+                    try {
+                        sendChatMessage(entry.getMessage());
+                        outbox.markSent(entry, connectionId, sendSeq);
+                    } catch (GeneralSecurityException e) {
+                        System.out.println("[CLIENT] Encryption failed: " + e.getMessage());
+                        outbox.remove(entry);
+                    }
+                }
+                out.flush();
+                return true;
+            } catch (IOException e) {
+                authenticated = false;
+            }
+        }
+        scheduleReconnect();
+        return false;
+    }
+
+    // Caller holds writeLock and flushes
+    private void sendChatMessage(String message) throws IOException, GeneralSecurityException {
+        // sendSeq only moves once a message is written - the server acks by this count, in both modes
+        if (gcmSessionId != null) {
+            // One pass: encrypt + tag over (username, session, seq) - no separate HMAC frame
+            out.writeObject(AesGcmUtils.seal(aesKey, username, gcmSessionId, sendSeq + 1, message));
+            sendSeq++;
+            return;
+        }
+
+        // Encrypt the message before sending
+        String encrypted = AesUtils.encrypt(aesKey, message);
+        // Generate HMAC after encryption
+        String hmac = HMACUtils.generateHMAC(username + ": " + encrypted);
+
+        out.writeObject(encrypted);
+        out.writeObject(hmac);
+        sendSeq++;
+    }
+
+    /**
+     * One file frame (plus its chunk) for FileTransferManager.
+     * writeUnshared + reset so the stream does not keep every chunk it has sent.
+     */
+    private void writeFrame(String frame, byte[] chunk) throws IOException {
+        synchronized (writeLock) {
+            if (!authenticated) {
+                throw new IOException("Not connected");
+            }
+            out.writeObject(frame);
+            if (chunk != null) {
+                out.writeUnshared(chunk);
+                out.reset();
+            }
+            out.flush();
+        }
+    }
+
+    /**
+     * Authenticate on the login connection, or open a new one
+     *
+     * If the server gave us a resumption ticket earlier, present it first:
+     * the server checks only its MAC (no JWT verification, no database) and
+     * sends just the history we missed. If the ticket is rejected, the JWT is
+     * sent on the same connection as before.
+     *
+     * @return true if the server answered AUTH_SUCCESS
+     */
+    private boolean connect() throws IOException, ClassNotFoundException {
+        // Reuse the socket login() ran on; a used or dropped one is replaced
+        if (socket == null || socket.isClosed() || authenticated) {
+            openSocket();
+        }
+        // A server that accepts but never answers must not hang the reconnect thread
+        socket.setSoTimeout(EnvConfig.getInt("CONNECT_TIMEOUT_MS", 5000));
+
+        negotiateCipher();
+
+        String authResponse;
+        if (resumptionTicket != null) {
+            out.writeObject("RESUME:" + resumptionTicket + ":" + historyCursor.get());
+            out.flush();
+            authResponse = (String) in.readObject();
+            if ("RESUME_FAILED".equals(authResponse)) {
+                resumptionTicket = null;
+                historyCursor.set(0); // a JWT login replays the whole history again
+                // send jwt token for auth
+                out.writeObject(token);
+                out.flush();
+                authResponse = (String) in.readObject();
+            }
+        } else {
+            historyCursor.set(0); // a JWT login replays the whole history again
+            // send jwt token for auth
+            out.writeObject(token);
+            out.flush();
+
+            //⃣ Wait for server to confirm authentication
+            authResponse = (String) in.readObject();
+        }
+
+        if ("SERVER_FULL".equals(authResponse)) {
+            // Not an auth problem - the reconnect loop backs off and tries again
+            socket.close();
+            throw new IOException("Server full - try again later");
+        }
+        if (!"AUTH_SUCCESS".equals(authResponse)) {
+            System.out.println("[CLIENT] Authentication failed: " + authResponse);
+            socket.close();
+            return false;
+        }
+
+        // Server follows AUTH_SUCCESS with a ticket for the next reconnect
+        String ticketFrame = (String) in.readObject();
+        if (ticketFrame != null && ticketFrame.startsWith("RESUME_TICKET:")) {
+            resumptionTicket = ticketFrame.substring("RESUME_TICKET:".length());
+        }
+        socket.setSoTimeout(0); // chat connections may be quiet for a long time
+
+        authenticated = true;
+        startListener(in, connectionId);
+        if (files != null) {
+            files.resumeAll(); // unfinished uploads continue from their last acknowledged chunk
+        }
+        flushOutbox(); // messages typed while offline, or not acknowledged before the drop
+        return true;
+    }
+
+    /**
+     * Offer AES-GCM; the server answers "CIPHER:AES-GCM:<sessionId>" or "CIPHER:CBC-HMAC"
+     */
+    private void negotiateCipher() throws IOException, ClassNotFoundException {
+        out.writeObject("CIPHERS:AES-GCM,CBC-HMAC");
+        out.flush();
+        String response = (String) in.readObject();
+
+        String gcmPrefix = "CIPHER:AES-GCM:";
+        gcmSessionId = response != null && response.startsWith(gcmPrefix) ? response.substring(gcmPrefix.length()) : null;
+        sendSeq = 0;
+    }
+
+    /**
+     * Start the reconnect thread unless one is running (or we are quitting)
+     */
+    private void scheduleReconnect() {
+        if (closing || !reconnecting.compareAndSet(false, true)) {
+            return;
+        }
+        System.out.println("[CLIENT] Connection lost, reconnecting...");
+        Thread reconnect = new Thread(this::reconnectLoop, "chat-reconnect");
+        reconnect.setDaemon(true);
+        reconnect.start();
+    }
+
+    private void reconnectLoop() {
+        long baseMs = EnvConfig.getLong("RECONNECT_BASE_MS", 500);
+        long maxMs = EnvConfig.getLong("RECONNECT_MAX_MS", 30_000);
+        boolean resumed = false;
+        try {
+            for (int attempt = 0; !closing; attempt++) {
+                // Full jitter: anywhere between 0 and the exponential step, capped
+                long step = Math.min(maxMs, baseMs << Math.min(attempt, 20));
+                Thread.sleep(ThreadLocalRandom.current().nextLong(step + 1));
+                if (closing) {
+                    break;
+                }
+                try {
+                    int pending = outbox.size();
+                    openSocket(); // never reuse the socket that dropped
+                    resumed = connect();
+                    if (resumed) {
+                        System.out.println("[CLIENT] Reconnected." + (pending > 0 ? " Re-sent " + pending + " queued message(s)." : ""));
+                    } else {
+                        System.out.println("[CLIENT] Could not resume the session - type /quit and log in again.");
+                    }
+                    break;
+                } catch (IOException | ClassNotFoundException e) {
+                    System.out.println("[CLIENT] Reconnect attempt " + (attempt + 1) + " failed: " + e.getMessage());
+                }
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } finally {
+            reconnecting.set(false);
+        }
+        // The new connection may have dropped again before the flag was cleared
+        if (resumed && !authenticated) {
+            scheduleReconnect();
+        }
+    }
+
+    // Start listener thread for incoming messages on one connection
+    private void startListener(ObjectInputStream in, long connection) {
+        try {
+            Thread listener = new Thread(() -> {
+                try {
+                    Object input;
+                    while ((input = in.readObject()) != null) {
+                        String encrypted = (String) input;
+                        try {
+                            if (encrypted.startsWith("MSG_ACK:")) {
+                                outbox.acknowledge(connection, Long.parseLong(encrypted.substring("MSG_ACK:".length())));
+                            } else if (FileTransferManager.isFileFrame(encrypted)) {
+                                // A chunk frame is followed by the chunk bytes; file frames are not chat history
+                                Object chunk = encrypted.startsWith("FILE_CHUNK:") ? in.readObject() : null;
+                                if (files != null) {
+                                    files.handle(encrypted, chunk instanceof byte[] bytes ? bytes : null);
+                                }
+                            } else if (encrypted.startsWith("[SERVER]")) {
+                                incoming.show(encrypted);
+                            } else {
+                                // Every history or chat frame moves the resume cursor forward
+                                int number = historyCursor.incrementAndGet();
+                                incoming.submit(() -> decodeChatFrame(encrypted, number));
+                            }
+                        } catch (InterruptedException ex) {
+                            throw ex;
+                        } catch (Exception ex) {
+                            incoming.show("[CLIENT] Could not handle frame: " + ex.getMessage());
+                        }
+                    }
+                } catch (Exception e) {
+                    if (!closing) {
+                        System.out.println("[CLIENT] Disconnected from server.");
+                    }
+                }
+                // Only this connection's listener may start a reconnect - a newer one may already be up
+                synchronized (writeLock) {
+                    if (connection != connectionId) {
+                        return;
+                    }
+                    authenticated = false;
+                }
+                scheduleReconnect();
+            });
+            listener.setDaemon(true);
+            listener.start();
+        } catch (Exception e) {
+            System.out.println("[CLIENT] Listener error: " + e.getMessage());
+        }
+    }
+
+    /**
+     * Turn a "sender: ciphertext" frame into the line to print (runs on a decrypt worker).
+     * A frame that cannot be parsed or decrypted becomes a one-line report - ciphertext is never printed.
+     *
+     * @param number The frame's position in the chat (historyCursor), used in reports
+     */
+    private String decodeChatFrame(String frame, int number) {
+        // Split the incoming message at the first colon
+        int sep = frame.indexOf(':');
+        if (sep <= 0) {
+            return "[CLIENT] Message #" + number + " dropped: not \"sender: message\"";
+        }
+        String sender = frame.substring(0, sep).trim();
+        String cipherText = frame.substring(sep + 1).trim();
+        // History frames arrive as "[HISTORY] sender: ..." - the GCM tag was made for the plain name
+        String author = sender.startsWith("[HISTORY] ") ? sender.substring("[HISTORY] ".length()) : sender;
+        try {
+            String decrypted = AesGcmUtils.isFrame(cipherText)
+                    ? AesGcmUtils.open(aesKey, author, cipherText)
+                    : AesUtils.decrypt(aesKey, cipherText);
+            return "[" + sender + "] " + decrypted;
+        } catch (GeneralSecurityException e) {
+            return "[SECURITY] Message #" + number + " from " + author + " dropped: failed "
+                    + (AesGcmUtils.isFrame(cipherText) ? "GCM verification" : "decryption") + " (" + e.getMessage() + ")";
+        } catch (Exception e) {
+            return "[CLIENT] Message #" + number + " from " + author + " dropped: malformed ciphertext (" + e.getMessage() + ")";
+        }
+    }
+
     public void close() {
+        closing = true;
+        if (outbox != null) {
+            outbox.wake(); // lets the sender thread see closing
+        }
+        if (incoming != null) {
+            incoming.close();
+        }
+        if (files != null) {
+            files.close();
+        }
         try {
             if (out != null) out.close();
             if (in != null) in.close();
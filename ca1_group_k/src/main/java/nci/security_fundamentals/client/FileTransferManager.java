@@ -0,0 +1,388 @@
+package nci.security_fundamentals.client;
+
+import nci.security_fundamentals.security.AesGcmUtils;
+
+import javax.crypto.SecretKey;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.security.GeneralSecurityException;
+import java.util.Base64;
+import java.util.BitSet;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * FileTransferManager - Sends and receives files in encrypted chunks next to the chat
+ *
+ * PURPOSE: Share files of any size without loading them into memory. A file is read,
+ *          sealed (AES-GCM), sent and written 64 KB at a time, on both ends.
+ * USED BY: ChatClient ("/sendfile <path>", and the listener for incoming FILE_* frames)
+ *
+ * FRAMES (Strings, with the chunk itself as a separate byte[] object):
+ * -send:    "FILE_OFFER:<id>:<size>:<chunkSize>:<name>"    (name is URL-safe Base64)
+ *           "FILE_CHUNK:<id>:<offset>" + byte[] IV || ciphertext || tag
+ * -server:  "FILE_ACK:<id>:<endOffset>"                     once the chunk is queued for every receiver
+ *           "FILE_REJECTED:<id>:<reason>"
+ * -receive: "FILE_OFFER:<id>:<size>:<chunkSize>:<name>:<sender>"
+ *           "FILE_CHUNK:<id>:<offset>:<sender>" + byte[]
+ *
+ * FLOW CONTROL: at most WINDOW chunks are sent but not yet acknowledged by the server.
+ * The server acknowledges a chunk once it is queued for every receiver, and each receiver's
+ * queue is small, so a slow receiver slows the sender down instead of filling memory anywhere.
+ *
+ * RESUME: chunks carry their offset and receivers write at that position, so a chunk
+ * that arrives twice is harmless. After a reconnect, ChatClient calls resumeAll() and
+ * every unfinished upload continues from its last acknowledged offset.
+ *
+ * CHAT STAYS RESPONSIVE: each upload has its own thread and takes the connection's
+ * write lock for one chunk at a time, so a chat message waits at most one chunk.
+ *
+ * Chunk integrity: the GCM associated data is sender + id + offset + file size, so a
+ * chunk cannot be moved to another position, file or sender.
+ */
+public class FileTransferManager {
+
+    static final String OFFER_PREFIX = "FILE_OFFER:";
+    static final String CHUNK_PREFIX = "FILE_CHUNK:";
+    static final String ACK_PREFIX = "FILE_ACK:";
+    static final String REJECTED_PREFIX = "FILE_REJECTED:";
+
+    public static final int CHUNK_SIZE = 64 * 1024;
+    private static final int WINDOW = 8;
+
+    /**
+     * Writes one frame (and the optional chunk after it) under the connection's write lock
+     */
+    public interface FrameWriter {
+        void write(String frame, byte[] chunk) throws IOException;
+    }
+
+    private final SecretKey key;
+    private final String username;
+    private final FrameWriter writer;
+    private final Path downloadDir;
+    private final Map<String, Upload> uploads = new ConcurrentHashMap<>();
+    private final Map<String, Download> downloads = new ConcurrentHashMap<>();
+
+    /**
+     * @param downloadDir Where received files are written (created when the first one arrives)
+     */
+    public FileTransferManager(SecretKey key, String username, FrameWriter writer, Path downloadDir) {
+        this.key = key;
+        this.username = username;
+        this.writer = writer;
+        this.downloadDir = downloadDir;
+    }
+
+    public static boolean isFileFrame(String frame) {
+        return frame.startsWith("FILE_");
+    }
+
+    // ------------------ SENDING ------------------
+
+    /**
+     * Start uploading a file to everyone in the chat (returns immediately)
+     */
+    public void send(Path file) throws IOException {
+        if (!Files.isRegularFile(file)) {
+            throw new IOException("Not a file: " + file);
+        }
+        Upload upload = new Upload(newTransferId(), file, Files.size(file));
+        uploads.put(upload.id, upload);
+        System.out.println("[FILE] Sending " + file.getFileName() + " (" + upload.size + " bytes)");
+        upload.start();
+    }
+
+    /**
+     * Continue every unfinished upload on a new connection, from its last acknowledged offset
+     */
+    public void resumeAll() {
+        for (Upload upload : uploads.values()) {
+            upload.start();
+        }
+    }
+
+    private void onAck(String frame) {
+        // FILE_ACK:<id>:<endOffset>
+        String[] parts = frame.split(":", 3);
+        Upload upload = parts.length == 3 ? uploads.get(parts[1]) : null;
+        if (upload != null) {
+            upload.acknowledge(Long.parseLong(parts[2]));
+        }
+    }
+
+    private void onRejected(String frame) {
+        String[] parts = frame.split(":", 3);
+        Upload upload = parts.length == 3 ? uploads.remove(parts[1]) : null;
+        if (upload != null) {
+            upload.cancel();
+            System.out.println("[FILE] " + upload.file.getFileName() + " was rejected: " + parts[2]);
+        }
+    }
+
+    private class Upload {
+        final String id;
+        final Path file;
+        final long size;
+        private long acked;          // every byte before this was relayed by the server
+        private int generation;      // bumped by start() - an older sending thread then stops
+        private boolean cancelled;
+
+        Upload(String id, Path file, long size) {
+            this.id = id;
+            this.file = file;
+            this.size = size;
+        }
+
+        /**
+         * (Re)start sending from the last acknowledged offset
+         */
+        synchronized void start() {
+            if (cancelled) {
+                return;
+            }
+            int current = ++generation;
+            notifyAll(); // a thread from the old connection stops waiting for acks that will never come
+            Thread thread = new Thread(() -> run(current), "file-send-" + id);
+            thread.setDaemon(true);
+            thread.start();
+        }
+
+        synchronized void acknowledge(long endOffset) {
+            acked = Math.max(acked, endOffset);
+            notifyAll();
+        }
+
+        synchronized void cancel() {
+            cancelled = true;
+            notifyAll();
+        }
+
+        private synchronized boolean isCurrent(int run) {
+            return !cancelled && run == generation;
+        }
+
+        private synchronized boolean waitForWindow(int run, long offset) throws InterruptedException {
+            while (isCurrent(run) && offset - acked >= (long) WINDOW * CHUNK_SIZE) {
+                wait();
+            }
+            return isCurrent(run);
+        }
+
+        private synchronized boolean waitForLastAck(int run) throws InterruptedException {
+            while (isCurrent(run) && acked < size) {
+                wait();
+            }
+            return isCurrent(run);
+        }
+
+        private void run(int run) {
+            // One reused read buffer - memory does not depend on the file size
+            ByteBuffer buffer = ByteBuffer.allocate(CHUNK_SIZE);
+            long offset;
+            synchronized (this) {
+                offset = acked; // a resumed upload starts after the last relayed chunk
+            }
+            try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+                String name = Base64.getUrlEncoder().withoutPadding()
+                        .encodeToString(file.getFileName().toString().getBytes(StandardCharsets.UTF_8));
+                writer.write(OFFER_PREFIX + id + ":" + size + ":" + CHUNK_SIZE + ":" + name, null);
+
+                while (offset < size) {
+                    if (!waitForWindow(run, offset)) {
+                        return;
+                    }
+                    buffer.clear();
+                    buffer.limit((int) Math.min(CHUNK_SIZE, size - offset));
+                    while (buffer.hasRemaining() && channel.read(buffer, offset + buffer.position()) >= 0) {
+                        // positional reads until the chunk is full
+                    }
+                    byte[] sealed = AesGcmUtils.seal(key, chunkAad(username, id, offset, size),
+                            buffer.array(), 0, buffer.position());
+                    writer.write(CHUNK_PREFIX + id + ":" + offset, sealed);
+                    offset += buffer.position();
+                }
+
+                if (waitForLastAck(run)) {
+                    uploads.remove(id);
+                    System.out.println("[FILE] Sent " + file.getFileName());
+                }
+            } catch (IOException e) {
+                // Connection lost - resumeAll() picks up from the last acknowledged chunk
+                System.out.println("[FILE] Upload of " + file.getFileName() + " paused: " + e.getMessage());
+            } catch (GeneralSecurityException e) {
+                uploads.remove(id);
+                System.out.println("[FILE] Cannot encrypt " + file.getFileName() + ": " + e.getMessage());
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }
+    }
+
+    // ------------------ RECEIVING ------------------
+
+    /**
+     * Handle a FILE_* frame from the listener thread
+     *
+     * @param chunk The byte[] that followed a FILE_CHUNK frame, null for other frames
+     */
+    public void handle(String frame, byte[] chunk) {
+        try {
+            if (frame.startsWith(ACK_PREFIX)) {
+                onAck(frame);
+            } else if (frame.startsWith(REJECTED_PREFIX)) {
+                onRejected(frame);
+            } else if (frame.startsWith(OFFER_PREFIX)) {
+                onOffer(frame);
+            } else if (frame.startsWith(CHUNK_PREFIX)) {
+                onChunk(frame, chunk);
+            }
+        } catch (RuntimeException | IOException e) {
+            System.out.println("[FILE] Bad file frame ignored: " + e.getMessage());
+        }
+    }
+
+    private void onOffer(String frame) throws IOException {
+        // FILE_OFFER:<id>:<size>:<chunkSize>:<name>:<sender>
+        String[] parts = frame.substring(OFFER_PREFIX.length()).split(":", 5);
+        if (parts.length != 5) {
+            throw new IOException("malformed offer");
+        }
+        String id = parts[0];
+        if (!AesGcmUtils.isSessionId(id)) {
+            throw new IOException("bad transfer id in offer");
+        }
+        if (downloads.containsKey(id)) {
+            return; // re-offer after the sender reconnected - keep what we have
+        }
+        long size = Long.parseLong(parts[1]);
+        int chunkSize = Integer.parseInt(parts[2]);
+        String name = safeFileName(new String(Base64.getUrlDecoder().decode(parts[3]), StandardCharsets.UTF_8));
+        String sender = parts[4];
+        if (size < 0 || chunkSize <= 0 || size / chunkSize >= Integer.MAX_VALUE) {
+            throw new IOException("bad size in offer");
+        }
+
+        Files.createDirectories(downloadDir);
+        Path part = downloadDir.resolve(id + "-" + name + ".part");
+        if (!part.normalize().startsWith(downloadDir.normalize())) {
+            throw new IOException("offer would write outside " + downloadDir);
+        }
+        Download download = new Download(id, sender, name, size, chunkSize, part);
+        downloads.put(id, download);
+        System.out.println("[FILE] " + sender + " is sending " + name + " (" + size + " bytes)");
+        if (size == 0) {
+            finish(download);
+        }
+    }
+
+    private void onChunk(String frame, byte[] sealed) throws IOException {
+        // FILE_CHUNK:<id>:<offset>:<sender>
+        String[] parts = frame.substring(CHUNK_PREFIX.length()).split(":", 3);
+        Download download = parts.length == 3 && AesGcmUtils.isSessionId(parts[0]) ? downloads.get(parts[0]) : null;
+        if (download == null || sealed == null) {
+            return; // offer missed (joined mid-transfer) - nothing to write into
+        }
+        long offset = Long.parseLong(parts[1]);
+        String sender = parts[2];
+        if (!sender.equals(download.sender) || offset < 0 || offset >= download.size || offset % download.chunkSize != 0) {
+            throw new IOException("chunk does not belong to " + download.name);
+        }
+
+        byte[] plain;
+        try {
+            plain = AesGcmUtils.open(key, chunkAad(sender, download.id, offset, download.size), sealed);
+        } catch (GeneralSecurityException e) {
+            System.out.println("[SECURITY] Dropped a chunk of " + download.name + " that failed GCM verification");
+            return;
+        }
+
+        // Positional write - chunks may be repeated after a resume, order does not matter
+        ByteBuffer data = ByteBuffer.wrap(plain);
+        while (data.hasRemaining()) {
+            download.channel.write(data, offset + data.position());
+        }
+        download.received.set((int) (offset / download.chunkSize));
+        if (download.received.cardinality() == download.chunkCount) {
+            finish(download);
+        }
+    }
+
+    private void finish(Download download) throws IOException {
+        downloads.remove(download.id);
+        download.channel.force(false);
+        download.channel.close();
+
+        Path target = downloadDir.resolve(download.name);
+        for (int n = 1; Files.exists(target); n++) {
+            target = downloadDir.resolve(n + "-" + download.name);
+        }
+        Files.move(download.part, target, StandardCopyOption.ATOMIC_MOVE);
+        System.out.println("[FILE] Received " + target.getFileName() + " from " + download.sender + " -> " + target);
+    }
+
+    /**
+     * Close files still being received (their .part files stay on disk)
+     */
+    public void close() {
+        for (Download download : downloads.values()) {
+            try {
+                download.channel.close();
+            } catch (IOException ignored) {
+                // closing anyway
+            }
+        }
+        for (Upload upload : uploads.values()) {
+            upload.cancel();
+        }
+    }
+
+    private static class Download {
+        final String id;
+        final String sender;
+        final String name;
+        final long size;
+        final int chunkSize;
+        final int chunkCount;
+        final Path part;
+        final FileChannel channel;
+        final BitSet received = new BitSet();
+
+        Download(String id, String sender, String name, long size, int chunkSize, Path part) throws IOException {
+            this.id = id;
+            this.sender = sender;
+            this.name = name;
+            this.size = size;
+            this.chunkSize = chunkSize;
+            this.chunkCount = (int) ((size + chunkSize - 1) / chunkSize);
+            this.part = part;
+            this.channel = FileChannel.open(part, StandardOpenOption.CREATE, StandardOpenOption.WRITE);
+        }
+    }
+
+    // ------------------ HELPERS ------------------
+
+    private static String newTransferId() {
+        return AesGcmUtils.newSessionId();
+    }
+
+    // sender \0 id \0 offset \0 size
+    private static byte[] chunkAad(String sender, String id, long offset, long size) {
+        return (sender + '\0' + id + '\0' + offset + '\0' + size).getBytes(StandardCharsets.UTF_8);
+    }
+
+    // Only the last path element, and only characters that are safe in a file name
+    private static String safeFileName(String name) {
+        String base = Paths.get(name.replace('\\', '/')).getFileName() != null
+                ? Paths.get(name.replace('\\', '/')).getFileName().toString() : "";
+        String safe = base.replaceAll("[^A-Za-z0-9._-]", "_");
+        return safe.isEmpty() || safe.startsWith(".") ? "file" + safe : safe;
+    }
+}
@@ -0,0 +1,123 @@
+package nci.security_fundamentals.client;
+
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.LinkedHashSet;
+import java.util.List;
+
+/**
+ * Outbox - Chat messages that the server has not acknowledged yet
+ *
+ * PURPOSE: A message typed while the connection is down, or lost with a dropped
+ *          connection, is kept here and sent again after the reconnect instead of
+ *          being thrown away.
+ * USED BY: ChatClient (add from the console or send(), acknowledge on "MSG_ACK:<n>";
+ *          its sender thread waits in awaitAdded() and sends unsent() in one batch)
+ *
+ * ACKS: the server counts the chat messages it has processed on a connection and
+ * answers "MSG_ACK:<n>" after each one, so an ack covers every message sent on that
+ * connection up to n. Messages are remembered with the connection and position they
+ * were last sent on; anything not acknowledged there is sent again on the next one.
+ * Delivery is at-least-once: if the connection drops after the server relayed a
+ * message but before its ack arrived, that message is relayed twice.
+ *
+ * SETTINGS (.env):
+ * - OUTBOX_MAX_MESSAGES  unacknowledged messages kept before new ones are refused (default 1000)
+ */
+public class Outbox {
+
+    public static final class Entry {
+        private final String message;
+        private long connection;   // connection it was last sent on, 0 = not sent yet
+        private long seq;          // its position on that connection (1, 2, 3, ...)
+
+        private Entry(String message) {
+            this.message = message;
+        }
+
+        public String getMessage() {
+            return message;
+        }
+    }
+
+    private final int capacity;
+    private final LinkedHashSet<Entry> entries = new LinkedHashSet<>();  // oldest first
+    private boolean added;                                               // add() since the last awaitAdded()
+
+    public Outbox(int capacity) {
+        this.capacity = capacity;
+    }
+
+    /**
+     * Queue a message
+     * @return null if the outbox is full
+     */
+    public synchronized Entry add(String message) {
+        if (entries.size() >= capacity) {
+            return null;
+        }
+        Entry entry = new Entry(message);
+        entries.add(entry);
+        added = true;
+        notifyAll();
+        return entry;
+    }
+
+    /**
+     * Block until add() was called since the last return from here (or wake() is called).
+     * Everything added by then is in unsent(), so one call can pick up a whole burst.
+     */
+    public synchronized void awaitAdded() throws InterruptedException {
+        while (!added) {
+            wait();
+        }
+        added = false;
+    }
+
+    public synchronized void wake() {
+        added = true;
+        notifyAll();
+    }
+
+    /**
+     * Messages not yet sent on this connection, oldest first
+     */
+    public synchronized List<Entry> unsent(long connection) {
+        List<Entry> result = new ArrayList<>();
+        for (Entry entry : entries) {
+            if (entry.connection != connection) {
+                result.add(entry);
+            }
+        }
+        return result;
+    }
+
+    public synchronized void markSent(Entry entry, long connection, long seq) {
+        entry.connection = connection;
+        entry.seq = seq;
+    }
+
+    /**
+     * "MSG_ACK:<seq>" on this connection - everything sent on it up to seq has been processed
+     */
+    public synchronized void acknowledge(long connection, long seq) {
+        Iterator<Entry> it = entries.iterator();
+        while (it.hasNext()) {
+            Entry entry = it.next();
+            if (entry.connection == connection && entry.seq <= seq) {
+                it.remove();
+            }
+        }
+    }
+
+    /**
+     * Drop a message that can never be sent (e.g. it failed to encrypt)
+     */
+    public synchronized void remove(Entry entry) {
+        entries.remove(entry);
+    }
+
+    public synchronized int size() {
+        return entries.size();
+    }
+}
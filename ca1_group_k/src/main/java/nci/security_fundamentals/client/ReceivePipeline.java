@@ -0,0 +1,96 @@
+package nci.security_fundamentals.client;
+
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Consumer;
+
+/**
+ * ReceivePipeline - Decrypts incoming chat frames in parallel, shows them in order
+ *
+ * PURPOSE: Joining a busy chat replays the whole history. Decrypting it frame by frame on
+ *          the socket thread froze the screen for seconds; here the socket thread only
+ *          hands frames out, a few workers decrypt them side by side, and one display
+ *          thread prints the results in the order the frames arrived.
+ * USED BY: ChatClient (its listener submits, the display callback prints)
+ *
+ * ORDER: every frame gets a Future, and the futures are queued in arrival order. The
+ * display thread waits for the head of the queue, so a slow frame holds back the ones
+ * behind it but nothing is ever shown out of order.
+ *
+ * BACKPRESSURE: the queue holds at most "depth" frames; when the display falls that far
+ * behind, submit() blocks and the socket thread stops reading.
+ *
+ * FAILURES: a decode task that throws is shown as one "[CLIENT] Could not show message"
+ * line for that frame; the frames around it are not affected.
+ */
+public class ReceivePipeline {
+
+    private final ExecutorService workers;
+    private final BlockingQueue<Future<String>> pending;
+    private final Thread display;
+    private volatile boolean closed;
+
+    /**
+     * @param threads Decrypt workers
+     * @param depth   Frames decrypted or waiting before submit() blocks
+     * @param output  Called on the display thread, in arrival order (null results are skipped)
+     */
+    public ReceivePipeline(int threads, int depth, Consumer<String> output) {
+        AtomicInteger workerCount = new AtomicInteger();
+        this.workers = Executors.newFixedThreadPool(Math.max(1, threads), r -> {
+            Thread t = new Thread(r, "chat-decrypt-" + workerCount.incrementAndGet());
+            t.setDaemon(true);
+            return t;
+        });
+        this.pending = new ArrayBlockingQueue<>(depth);
+        this.display = new Thread(() -> displayLoop(output), "chat-display");
+        display.setDaemon(true);
+        display.start();
+    }
+
+    /**
+     * Decode a frame on a worker; its result is shown after everything submitted before it
+     */
+    public void submit(Callable<String> decode) throws InterruptedException {
+        pending.put(workers.submit(decode));
+    }
+
+    /**
+     * A line that needs no decrypting (e.g. a server notice), kept in order with the rest
+     */
+    public void show(String line) throws InterruptedException {
+        pending.put(CompletableFuture.completedFuture(line));
+    }
+
+    private void displayLoop(Consumer<String> output) {
+        try {
+            while (!closed) {
+                Future<String> next = pending.take();
+                String line;
+                try {
+                    line = next.get();
+                } catch (ExecutionException e) {
+                    line = "[CLIENT] Could not show message: " + e.getCause().getMessage();
+                }
+                if (line != null) {
+                    output.accept(line);
+                }
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    public void close() {
+        closed = true;
+        display.interrupt();
+        workers.shutdownNow();
+    }
+}
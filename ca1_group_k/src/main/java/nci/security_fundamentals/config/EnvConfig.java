@@ -1,6 +1,8 @@
 package nci.security_fundamentals.config;
 
 import io.github.cdimascio.dotenv.Dotenv;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
 
 /**
  * EnvConfig - Configuration Manager
@@ -9,15 +11,17 @@ import io.github.cdimascio.dotenv.Dotenv;
  * WHY: Keeps sensitive data OUT of code and IN .env files (never commit .env to git!)
  * 
  * HOW IT FITS:
- * - Used by LoginHandler to get MongoDB connection string
+ * - Used by MongoConnectionManager to get MongoDB connection string and pool settings
  * - Used by JwtService to get JWT secret key for token signing
  * - Any class needing config calls EnvConfig.get() or EnvConfig.getRequired()
  * 
  * USAGE:
  *   String dbUrl = EnvConfig.getRequired("MONGODB_CONNECTION_STRING");
  *   String apiKey = EnvConfig.get("OPTIONAL_KEY"); // returns null if not found
+ *   int poolSize = EnvConfig.getInt("MONGODB_POOL_MAX_SIZE", 100); // default if not found
  */
 public class EnvConfig {
+    private static final Logger log = LoggerFactory.getLogger(EnvConfig.class);
     
     private static Dotenv dotenv;
     
@@ -65,4 +69,48 @@ public class EnvConfig {
         }
         return value;
     }
+    
+    /**
+     * Gets a numeric environment variable, or a default if it is not set.
+     * A value that is not a number or does not fit in an int is reported and
+     * the default is used instead (a plain cast would silently wrap it).
+     * 
+     * @param key The environment variable key
+     * @param defaultValue Value used when the key is missing or invalid
+     * @return The parsed value
+     */
+    public static int getInt(String key, int defaultValue) {
+        long value = getLong(key, defaultValue);
+        try {
+            return Math.toIntExact(value);
+        } catch (ArithmeticException e) {
+            warnInvalid(key, "is out of range for an int", dotenv.get(key), defaultValue);
+            return defaultValue;
+        }
+    }
+    
+    /**
+     * Gets a numeric environment variable, or a default if it is not set.
+     * A value that is not a number is reported and the default is used instead.
+     * 
+     * @param key The environment variable key
+     * @param defaultValue Value used when the key is missing or invalid
+     * @return The parsed value
+     */
+    public static long getLong(String key, long defaultValue) {
+        String value = dotenv.get(key);
+        if (value == null || value.isBlank()) {
+            return defaultValue;
+        }
+        try {
+            return Long.parseLong(value.trim());
+        } catch (NumberFormatException e) {
+            warnInvalid(key, "is not a number", value, defaultValue);
+            return defaultValue;
+        }
+    }
+    
+    private static void warnInvalid(String key, String problem, String value, long defaultValue) {
+        log.warn("[CONFIG] {} in .env file {}: {} - using {}", key, problem, value, defaultValue);
+    }
 }
@@ -1,12 +1,11 @@
 package nci.security_fundamentals.config;
 
-import javax.crypto.Mac;
-import javax.crypto.SecretKey;
-import javax.crypto.spec.SecretKeySpec;
 import java.nio.charset.StandardCharsets;
-import java.nio.file.Files;
 import java.util.Base64;
-import nci.security_fundamentals.config.EnvConfig;
+
+import nci.security_fundamentals.security.HmacEngine;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
 
 /**
  * @Author Dylan White
@@ -18,80 +17,88 @@ import nci.security_fundamentals.config.EnvConfig;
  * Usage:
  * -generateHMAC(message) - creates the signature
  * -verifyHMAC(message, signature) - checks if the message matches the generated signature.
+ * -verifyHMAC(sender, message, signature) - same for "sender: message" without concatenating
+ *
+ * The work is done by HmacEngine (per-thread Mac, keyed once); comparison is constant-time.
  *
  * if the signature doesn't match the message was tampered with and will be rejected.
  */
 public class HMACUtils {
+    private static final Logger log = LoggerFactory.getLogger(HMACUtils.class);
 
-    private static final String ALGORITHM = "HmacSHA256";
-    private static String HMAC_SECRET_KEY;
+    private static final byte[] SENDER_SEPARATOR = ": ".getBytes(StandardCharsets.UTF_8);
+    private static HmacEngine ENGINE;
 
     static {
         try{
-            HMAC_SECRET_KEY = EnvConfig.getRequired("HMAC_SECRET_KEY");
-//            System.out.println("Loaded key from .env: " + HMAC_SECRET_KEY);
+            String key = EnvConfig.getRequired("HMAC_SECRET_KEY");
+            // Mac set up once per thread from here on, not once per message
+            ENGINE = new HmacEngine(key.getBytes(StandardCharsets.UTF_8));
         } catch (Exception e){
-            System.out.println("Failed to load key from .env: " + e.getMessage());
-            e.printStackTrace();
-            HMAC_SECRET_KEY = null;
+            log.error("Failed to load key from .env: {}", e.getMessage(), e);
+            ENGINE = null;
         }
     }
 
     public static String generateHMAC(String message) {
-        try{
-            if (HMAC_SECRET_KEY == null){
-                System.out.println("Key is null, cannot generate HMAC");
-                return null;
-            }
-
-            //Creating HMAC calculator
-            Mac hmac = Mac.getInstance(ALGORITHM);
-
-            //setting secret key
-            SecretKeySpec secretKey = new SecretKeySpec(
-                    HMAC_SECRET_KEY.getBytes(StandardCharsets.UTF_8),
-                    0,
-                    HMAC_SECRET_KEY.getBytes(StandardCharsets.UTF_8).length,
-                    ALGORITHM
-                    );
+        if (ENGINE == null){
+            log.error("Key is null, cannot generate HMAC");
+            return null;
+        }
+        //Calculate the HMAC of the message and convert to Base64 for transmission
+        return Base64.getEncoder().encodeToString(ENGINE.mac(message.getBytes(StandardCharsets.UTF_8)));
+    }
 
-            //initailising HMAC with secret key
-            hmac.init(secretKey);
+    /**
+     * Raw HMAC bytes - for callers that do not need a String
+     */
+    public static byte[] generateHMAC(byte[] message) {
+        return ENGINE != null ? ENGINE.mac(message) : null;
+    }
 
-            //Calculate the HMAC of the message
-            byte[] hmacBytes = hmac.doFinal(message.getBytes(StandardCharsets.UTF_8));
 
-            //Convert to Base64 for transmission
-            return Base64.getEncoder().encodeToString(hmacBytes);
+    public static boolean verifyHMAC(String message, String receivedHMAC) {
+        if (ENGINE == null || message == null || receivedHMAC == null){
+            log.warn("Failed to verify HMAC: null values");
+            return false;
+        }
+        return verify(receivedHMAC, message.getBytes(StandardCharsets.UTF_8));
+    }
 
-        } catch(Exception e){
-            System.out.println("Failed to generate HMAC: " +  e.getMessage());
-            return null;
+    /**
+     * Verify the HMAC of "sender: message" without building that string first
+     * (this is what ChatClient signs for every chat message)
+     */
+    public static boolean verifyHMAC(String sender, String message, String receivedHMAC) {
+        if (ENGINE == null || sender == null || message == null || receivedHMAC == null){
+            log.warn("Failed to verify HMAC: null values");
+            return false;
         }
+        return verify(receivedHMAC, sender.getBytes(StandardCharsets.UTF_8), SENDER_SEPARATOR,
+                message.getBytes(StandardCharsets.UTF_8));
     }
 
+    /**
+     * Raw-bytes check - constant-time comparison
+     */
+    public static boolean verifyHMAC(byte[] message, byte[] receivedHMAC) {
+        return ENGINE != null && ENGINE.verify(message, receivedHMAC);
+    }
 
-    public static boolean verifyHMAC(String message, String receivedHMAC) {
-        try{
-            //Calculating what the HMAC should be
-            String computeHMAC = generateHMAC(message);
-
-            if(computeHMAC == null || receivedHMAC == null){
-                System.out.println("Failed to verify HMAC: null values");
-                return false;
-            }
-            //comparing two HMACs
-            if(computeHMAC.equals(receivedHMAC)){
-                System.out.println("Successfully verified HMAC");
-                return true;
-            } else {
-                System.out.println("Failed to verify HMAC: (Possible tampering)");
-                return false;
-            }
-        } catch (Exception e) {
-            System.out.println("Failed to verify HMAC: " +  e.getMessage());
+    private static boolean verify(String receivedHMAC, byte[]... parts) {
+        byte[] received;
+        try {
+            received = Base64.getDecoder().decode(receivedHMAC);
+        } catch (IllegalArgumentException e) {
+            log.warn("Failed to verify HMAC: not Base64");
             return false;
         }
+        //comparing the two HMACs in constant time (String.equals stops at the first difference)
+        if (ENGINE.verifyParts(received, parts)) {
+            return true;
+        }
+        log.warn("Failed to verify HMAC: (Possible tampering)");
+        return false;
     }
 
     public static void main(String[] args) {
@@ -0,0 +1,240 @@
+package nci.security_fundamentals.loadgen;
+
+import nci.security_fundamentals.config.HMACUtils;
+import nci.security_fundamentals.security.AesGcmUtils;
+import nci.security_fundamentals.security.AesUtils;
+
+import javax.crypto.SecretKey;
+import java.io.IOException;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.net.InetSocketAddress;
+import java.net.Socket;
+import java.security.GeneralSecurityException;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * LoadClient - One simulated chat user, without a console
+ *
+ * PURPOSE: Speak the same protocol as ChatClient (REGISTER / LOGIN, cipher negotiation,
+ *          JWT auth, encrypted chat frames) so the server cannot tell it apart, but send
+ *          on a timer and measure instead of printing.
+ * USED BY: LoadGenerator (one per simulated user, each on its own virtual threads)
+ *
+ * MESSAGES: the plaintext is "LOAD|<scheduledNanos>|" padded with 'x' to the configured
+ * size. The server broadcasts every message back to its sender too; when the sender
+ * sees its own message, it decrypts it and records now - scheduledNanos. Messages from
+ * other users are only counted (decrypting all N x N deliveries would load the
+ * generator more than the server).
+ *
+ * Chat frames are written and read "unshared": a plain writeObject / readObject keeps a
+ * reference to every String in the stream's handle table, which over millions of
+ * deliveries would fill the generator's heap.
+ */
+class LoadClient {
+
+    static final String PASSWORD = "LoadGen!Passw0rd";
+    private static final String PAYLOAD_PREFIX = "LOAD|";
+
+    private final LoadGenerator.Config config;
+    private final SecretKey aesKey;
+    private final LoadStats stats;
+    private final String username;
+    private String token;
+
+    private Socket socket;
+    private ObjectOutputStream out;
+    private ObjectInputStream in;
+    private String gcmSessionId;
+    private long sendSeq;
+    private volatile boolean closing;
+
+    LoadClient(LoadGenerator.Config config, SecretKey aesKey, LoadStats stats, String username, String token) {
+        this.config = config;
+        this.aesKey = aesKey;
+        this.stats = stats;
+        this.username = username;
+        this.token = token;
+    }
+
+    String getUsername() {
+        return username;
+    }
+
+    String getToken() {
+        return token;
+    }
+
+    /**
+     * Open the socket, get a token if we have none, negotiate the cipher and authenticate
+     * @return true once the server answered AUTH_SUCCESS
+     */
+    boolean connect() {
+        try {
+            socket = new Socket();
+            socket.connect(new InetSocketAddress(config.host, config.port), config.connectTimeoutMs);
+            socket.setSoTimeout(config.connectTimeoutMs);
+            out = new ObjectOutputStream(socket.getOutputStream());
+            out.flush();
+            in = new ObjectInputStream(socket.getInputStream());
+
+            if (token == null && !mintToken()) {
+                stats.connectErrors.incrementAndGet();
+                close();
+                return false;
+            }
+
+            out.writeObject(config.gcm ? "CIPHERS:AES-GCM,CBC-HMAC" : "CIPHERS:CBC-HMAC");
+            out.flush();
+            String cipher = (String) in.readObject();
+            gcmSessionId = cipher.startsWith("CIPHER:AES-GCM:") ? cipher.substring("CIPHER:AES-GCM:".length()) : null;
+
+            out.writeObject(token);
+            out.flush();
+            String response = (String) in.readObject();
+            if ("SERVER_FULL".equals(response)) {
+                stats.rejected.incrementAndGet();
+                close();
+                return false;
+            }
+            if (!"AUTH_SUCCESS".equals(response)) {
+                stats.connectErrors.incrementAndGet();
+                close();
+                return false;
+            }
+            in.readObject(); // RESUME_TICKET - a load client never resumes
+            socket.setSoTimeout(0);
+            stats.connected.incrementAndGet();
+            return true;
+        } catch (IOException | ClassNotFoundException | GeneralSecurityException e) {
+            stats.connectErrors.incrementAndGet();
+            close();
+            return false;
+        }
+    }
+
+    /**
+     * REGISTER (an existing account is fine) then LOGIN on the handshake connection
+     */
+    private boolean mintToken() throws IOException, ClassNotFoundException, GeneralSecurityException {
+        out.writeObject("REGISTER");
+        out.writeObject(username);
+        out.writeObject(username + "@loadgen.invalid");
+        out.writeObject(AesUtils.encrypt(aesKey, PASSWORD));
+        out.flush();
+        in.readObject();
+
+        out.writeObject("LOGIN");
+        out.writeObject(username);
+        out.writeObject(AesUtils.encrypt(aesKey, PASSWORD));
+        out.flush();
+        String response = (String) in.readObject();
+        if (!response.startsWith("LOGIN_SUCCESS:")) {
+            return false;
+        }
+        token = response.substring("LOGIN_SUCCESS:".length());
+        return true;
+    }
+
+    /**
+     * Read until the connection closes: count deliveries, time our own messages
+     */
+    void readLoop() {
+        String ownPrefix = username + ": ";
+        try {
+            Object input;
+            while ((input = in.readUnshared()) != null) {
+                if (!(input instanceof String frame)) {
+                    continue; // a file chunk's bytes
+                }
+                if (frame.startsWith("MSG_ACK:")) {
+                    stats.acked.incrementAndGet();
+                } else if (frame.startsWith("[SERVER]") || frame.startsWith("[HISTORY]") || frame.startsWith("FILE_")) {
+                    // not part of the measurement
+                } else {
+                    stats.delivered.incrementAndGet();
+                    if (frame.startsWith(ownPrefix)) {
+                        recordLatency(frame.substring(ownPrefix.length()));
+                    }
+                }
+            }
+        } catch (IOException | ClassNotFoundException e) {
+            if (!closing) {
+                stats.ioErrors.incrementAndGet();
+                stats.connected.decrementAndGet();
+            }
+        }
+    }
+
+    private void recordLatency(String body) {
+        long received = System.nanoTime();
+        try {
+            String plain = AesGcmUtils.isFrame(body) ? AesGcmUtils.open(aesKey, username, body) : AesUtils.decrypt(aesKey, body);
+            int end = plain.indexOf('|', PAYLOAD_PREFIX.length());
+            long scheduled = Long.parseLong(plain.substring(PAYLOAD_PREFIX.length(), end));
+            stats.latency.record(received - scheduled);
+        } catch (Exception e) {
+            stats.badFrames.incrementAndGet();
+        }
+    }
+
+    /**
+     * Send config.rate messages per second until the deadline, on a fixed schedule
+     * (first message at a random offset so clients do not send in lockstep)
+     */
+    void sendLoop(long startNanos, long deadlineNanos) {
+        if (config.rate <= 0) {
+            return;
+        }
+        long interval = (long) (TimeUnit.SECONDS.toNanos(1) / config.rate);
+        long next = startNanos + ThreadLocalRandom.current().nextLong(interval + 1);
+        StringBuilder payload = new StringBuilder(config.messageBytes + 32);
+        try {
+            while (!closing && next < deadlineNanos) {
+                long wait = next - System.nanoTime();
+                if (wait > 0) {
+                    LockSupport.parkNanos(wait);
+                    continue;
+                }
+                payload.setLength(0);
+                payload.append(PAYLOAD_PREFIX).append(next).append('|');
+                while (payload.length() < config.messageBytes) {
+                    payload.append('x');
+                }
+                send(payload.toString());
+                stats.sent.incrementAndGet();
+                next += interval;
+            }
+        } catch (IOException e) {
+            if (!closing) {
+                stats.ioErrors.incrementAndGet();
+            }
+        } catch (GeneralSecurityException e) {
+            stats.badFrames.incrementAndGet();
+        }
+    }
+
+    private void send(String message) throws IOException, GeneralSecurityException {
+        if (gcmSessionId != null) {
+            out.writeUnshared(AesGcmUtils.seal(aesKey, username, gcmSessionId, ++sendSeq, message));
+        } else {
+            String encrypted = AesUtils.encrypt(aesKey, message);
+            out.writeUnshared(encrypted);
+            out.writeUnshared(HMACUtils.generateHMAC(username + ": " + encrypted));
+        }
+        out.flush();
+    }
+
+    void close() {
+        closing = true;
+        try {
+            if (socket != null) {
+                socket.close();
+            }
+        } catch (IOException e) {
+            // already gone
+        }
+    }
+}
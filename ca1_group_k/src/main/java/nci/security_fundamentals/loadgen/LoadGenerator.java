@@ -0,0 +1,233 @@
+package nci.security_fundamentals.loadgen;
+
+import nci.security_fundamentals.config.EnvConfig;
+import nci.security_fundamentals.security.AesUtils;
+
+import javax.crypto.SecretKey;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * LoadGenerator - Headless load test for ChatServer
+ *
+ * PURPOSE: Find out how many users and messages a server setup can take. Simulates
+ *          thousands of authenticated chat users from one JVM (two virtual threads
+ *          each - a sender and a reader) and reports delivery latency percentiles,
+ *          throughput and errors.
+ * USED BY: run by hand against a running ChatServer (see README)
+ *
+ * PHASES:
+ * 1. Connect - at most "parallel" handshakes at a time (the server's accept backlog is
+ *    finite). Users without a token in the tokens file REGISTER + LOGIN first; the
+ *    tokens are saved so the next run skips that (JWTs are valid for 24h).
+ * 2. Send    - every connected user sends "rate" messages per second of "size" bytes
+ *    for "duration" seconds, on a fixed schedule.
+ * 3. Drain   - "drain" more seconds to receive what is still in flight, then disconnect.
+ *
+ * ARGS (key=value, all optional - defaults shown):
+ *   host=localhost port=8080 clients=100 rate=1 size=128 duration=30 drain=2
+ *   cipher=gcm|cbc parallel=50 timeout=5000 progress=5
+ *   tokens=loadgen-tokens.csv out=loadgen-results
+ * The report is appended to <out>.csv (one row per run) and written to <out>.json.
+ * AES_SECRET_KEY and HMAC_SECRET_KEY come from .env, as for the normal client.
+ */
+public class LoadGenerator {
+
+    /**
+     * Settings for one run
+     */
+    public static class Config {
+        String host = "localhost";
+        int port = 8080;
+        int clients = 100;
+        double rate = 1;            // messages per second per client
+        int messageBytes = 128;     // plaintext size
+        int durationSeconds = 30;
+        int drainSeconds = 2;
+        boolean gcm = true;         // false = offer only CBC-HMAC
+        int connectParallel = 50;
+        int connectTimeoutMs = 5000;
+        int progressSeconds = 5;    // 0 = no progress lines
+        Path tokensFile = Paths.get("loadgen-tokens.csv");
+        String out = "loadgen-results";
+
+        static Config parse(String[] args) {
+            Config config = new Config();
+            for (String arg : args) {
+                int eq = arg.indexOf('=');
+                if (eq < 0) {
+                    throw new IllegalArgumentException("Expected key=value, got: " + arg);
+                }
+                String key = arg.substring(0, eq);
+                String value = arg.substring(eq + 1);
+                switch (key) {
+                    case "host" -> config.host = value;
+                    case "port" -> config.port = Integer.parseInt(value);
+                    case "clients" -> config.clients = Integer.parseInt(value);
+                    case "rate" -> config.rate = Double.parseDouble(value);
+                    case "size" -> config.messageBytes = Integer.parseInt(value);
+                    case "duration" -> config.durationSeconds = Integer.parseInt(value);
+                    case "drain" -> config.drainSeconds = Integer.parseInt(value);
+                    case "cipher" -> config.gcm = !"cbc".equalsIgnoreCase(value);
+                    case "parallel" -> config.connectParallel = Integer.parseInt(value);
+                    case "timeout" -> config.connectTimeoutMs = Integer.parseInt(value);
+                    case "progress" -> config.progressSeconds = Integer.parseInt(value);
+                    case "tokens" -> config.tokensFile = Paths.get(value);
+                    case "out" -> config.out = value;
+                    default -> throw new IllegalArgumentException("Unknown setting: " + key);
+                }
+            }
+            return config;
+        }
+    }
+
+    private final Config config;
+    private final SecretKey aesKey;
+    private final LoadStats stats = new LoadStats();
+    private final List<String> knownTokens = new ArrayList<>();  // tokens file lines, kept when saving
+
+    public LoadGenerator(Config config) {
+        this.config = config;
+        this.aesKey = AesUtils.fromBase64(EnvConfig.getRequired("AES_SECRET_KEY"));
+    }
+
+    public static void main(String[] args) throws Exception {
+        Config config;
+        try {
+            config = Config.parse(args);
+        } catch (IllegalArgumentException e) {
+            System.out.println("[LOAD] " + e.getMessage());
+            System.out.println("Usage: LoadGenerator [host=..] [port=..] [clients=..] [rate=..] [size=..] [duration=..] "
+                    + "[drain=..] [cipher=gcm|cbc] [parallel=..] [timeout=..] [progress=..] [tokens=..] [out=..]");
+            return;
+        }
+
+        Map<String, Object> report = new LoadGenerator(config).run();
+
+        Path csv = Paths.get(config.out + ".csv");
+        Path json = Paths.get(config.out + ".json");
+        LoadStats.writeCsv(csv, report);
+        LoadStats.writeJson(json, report);
+        System.out.println("[LOAD] " + report);
+        System.out.println("[LOAD] Report written to " + csv + " and " + json);
+        System.exit(0);
+    }
+
+    /**
+     * Connect, send, drain, disconnect
+     * @return the report row (see LoadStats.snapshot)
+     */
+    public Map<String, Object> run() throws IOException, InterruptedException {
+        List<LoadClient> clients = createClients();
+        List<LoadClient> connected = new ArrayList<>();
+
+        try (ExecutorService threads = Executors.newVirtualThreadPerTaskExecutor()) {
+            // 1. Connect
+            long connectStart = System.nanoTime();
+            Semaphore handshakes = new Semaphore(config.connectParallel);
+            CountDownLatch ready = new CountDownLatch(clients.size());
+            for (LoadClient client : clients) {
+                threads.submit(() -> {
+                    boolean ok;
+                    handshakes.acquireUninterruptibly();
+                    try {
+                        ok = client.connect();
+                    } finally {
+                        handshakes.release();
+                    }
+                    if (ok) {
+                        synchronized (connected) {
+                            connected.add(client);
+                        }
+                        threads.submit(client::readLoop);
+                    }
+                    ready.countDown();
+                });
+            }
+            ready.await();
+            System.out.printf("[LOAD] %d/%d clients connected in %d ms (rejected: %d, failed: %d)%n",
+                    connected.size(), clients.size(), TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - connectStart),
+                    stats.rejected.get(), stats.connectErrors.get());
+            saveTokens(clients);
+
+            // 2. Send
+            long start = System.nanoTime();
+            long deadline = start + TimeUnit.SECONDS.toNanos(config.durationSeconds);
+            ScheduledExecutorService progress = Executors.newSingleThreadScheduledExecutor();
+            if (config.progressSeconds > 0) {
+                progress.scheduleAtFixedRate(() -> System.out.println(stats.progress((System.nanoTime() - start) / 1e9)),
+                        config.progressSeconds, config.progressSeconds, TimeUnit.SECONDS);
+            }
+            List<Future<?>> senders = new ArrayList<>();
+            for (LoadClient client : connected) {
+                senders.add(threads.submit(() -> client.sendLoop(start, deadline)));
+            }
+            for (Future<?> sender : senders) {
+                try {
+                    sender.get();
+                } catch (Exception e) {
+                    stats.ioErrors.incrementAndGet();
+                }
+            }
+
+            // 3. Drain, then disconnect (the readers end when their socket closes)
+            Thread.sleep(TimeUnit.SECONDS.toMillis(config.drainSeconds));
+            progress.shutdownNow();
+            Map<String, Object> report = stats.snapshot(config, config.durationSeconds);
+            for (LoadClient client : clients) {
+                client.close();
+            }
+            return report;
+        }
+    }
+
+    /**
+     * Users from the tokens file ("username,token" per line) first, then new "loadgen-<n>" users
+     */
+    private List<LoadClient> createClients() throws IOException {
+        List<LoadClient> clients = new ArrayList<>(config.clients);
+        if (Files.exists(config.tokensFile)) {
+            for (String line : Files.readAllLines(config.tokensFile, StandardCharsets.UTF_8)) {
+                int comma = line.indexOf(',');
+                if (comma > 0) {
+                    knownTokens.add(line);
+                }
+                if (comma > 0 && clients.size() < config.clients) {
+                    clients.add(new LoadClient(config, aesKey, stats, line.substring(0, comma), line.substring(comma + 1).trim()));
+                }
+            }
+        }
+        for (int i = clients.size(); i < config.clients; i++) {
+            clients.add(new LoadClient(config, aesKey, stats, "loadgen-" + i, null));
+        }
+        return clients;
+    }
+
+    /**
+     * Add the tokens minted in this run to the tokens file
+     */
+    private void saveTokens(List<LoadClient> clients) throws IOException {
+        List<String> lines = new ArrayList<>(knownTokens);
+        for (LoadClient client : clients.subList(Math.min(knownTokens.size(), clients.size()), clients.size())) {
+            if (client.getToken() != null) {
+                lines.add(client.getUsername() + "," + client.getToken());
+            }
+        }
+        if (lines.size() > knownTokens.size()) {
+            Files.write(config.tokensFile, lines, StandardCharsets.UTF_8);
+        }
+    }
+}
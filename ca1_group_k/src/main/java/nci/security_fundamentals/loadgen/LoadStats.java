@@ -0,0 +1,112 @@
+package nci.security_fundamentals.loadgen;
+
+import nci.security_fundamentals.metrics.LatencyHistogram;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * LoadStats - Counters and delivery latency shared by every simulated client
+ *
+ * PURPOSE: One place the LoadClients record into (lock-free, from thousands of
+ *          virtual threads) and one place the report is written from.
+ * USED BY: LoadClient (record), LoadGenerator (progress lines, CSV / JSON report)
+ *
+ * LATENCY: time from a message's scheduled send time until its sender received it back
+ * from the server's broadcast. Using the scheduled time (not the moment it was written)
+ * means a sender that fell behind counts its wait, instead of hiding it.
+ */
+public class LoadStats {
+
+    final LatencyHistogram latency = new LatencyHistogram();
+    final AtomicLong connected = new AtomicLong();     // clients currently in the chat
+    final AtomicLong sent = new AtomicLong();          // chat messages written
+    final AtomicLong acked = new AtomicLong();         // MSG_ACKs received
+    final AtomicLong delivered = new AtomicLong();     // chat frames received, from anyone
+    final AtomicLong connectErrors = new AtomicLong(); // connect / handshake / auth failures
+    final AtomicLong rejected = new AtomicLong();      // SERVER_FULL answers
+    final AtomicLong ioErrors = new AtomicLong();      // connections lost mid-test
+    final AtomicLong badFrames = new AtomicLong();     // own messages that did not decrypt
+
+    /**
+     * Report fields in a fixed order - the CSV header and the JSON keys
+     */
+    public Map<String, Object> snapshot(LoadGenerator.Config config, double seconds) {
+        Map<String, Object> row = new LinkedHashMap<>();
+        row.put("clients", config.clients);
+        row.put("connected", connected.get());
+        row.put("rate_per_client", config.rate);
+        row.put("message_bytes", config.messageBytes);
+        row.put("cipher", config.gcm ? "AES-GCM" : "CBC-HMAC");
+        row.put("seconds", round(seconds));
+        row.put("sent", sent.get());
+        row.put("acked", acked.get());
+        row.put("delivered", delivered.get());
+        row.put("sent_per_s", round(sent.get() / seconds));
+        row.put("delivered_per_s", round(delivered.get() / seconds));
+        row.put("latency_samples", latency.getCount());
+        row.put("p50_ms", round(LatencyHistogram.millis(latency.getPercentileNanos(50))));
+        row.put("p99_ms", round(LatencyHistogram.millis(latency.getPercentileNanos(99))));
+        row.put("p999_ms", round(LatencyHistogram.millis(latency.getPercentileNanos(99.9))));
+        row.put("max_ms", round(LatencyHistogram.millis(latency.getMaxNanos())));
+        row.put("connect_errors", connectErrors.get());
+        row.put("rejected_full", rejected.get());
+        row.put("io_errors", ioErrors.get());
+        row.put("bad_frames", badFrames.get());
+        return row;
+    }
+
+    /**
+     * One header line and one row; appends a row if the file already has the header
+     * (so several runs, e.g. one per MAX_CLIENTS setting, end up in one table)
+     */
+    public static void writeCsv(Path file, Map<String, Object> row) throws IOException {
+        List<String> lines = new ArrayList<>();
+        if (!Files.exists(file) || Files.size(file) == 0) {
+            lines.add(String.join(",", row.keySet()));
+        }
+        List<String> values = new ArrayList<>();
+        for (Object value : row.values()) {
+            values.add(String.valueOf(value));
+        }
+        lines.add(String.join(",", values));
+        Files.write(file, lines, StandardCharsets.UTF_8, StandardOpenOption.CREATE, StandardOpenOption.APPEND);
+    }
+
+    public static void writeJson(Path file, Map<String, Object> row) throws IOException {
+        StringBuilder json = new StringBuilder("{\n");
+        int i = 0;
+        for (Map.Entry<String, Object> field : row.entrySet()) {
+            Object value = field.getValue();
+            json.append("  \"").append(field.getKey()).append("\": ")
+                    .append(value instanceof Number ? value : "\"" + value + "\"")
+                    .append(++i < row.size() ? ",\n" : "\n");
+        }
+        json.append("}\n");
+        Files.writeString(file, json, StandardCharsets.UTF_8);
+    }
+
+    /**
+     * e.g. "[LOAD] 12s connected=1000 sent=11987 delivered=11923004 p50=1.20ms p99=4.10ms errors=0"
+     */
+    public String progress(double seconds) {
+        return String.format(Locale.ROOT, "[LOAD] %.0fs connected=%d sent=%d delivered=%d p50=%.2fms p99=%.2fms errors=%d",
+                seconds, connected.get(), sent.get(), delivered.get(),
+                LatencyHistogram.millis(latency.getPercentileNanos(50)),
+                LatencyHistogram.millis(latency.getPercentileNanos(99)),
+                connectErrors.get() + rejected.get() + ioErrors.get() + badFrames.get());
+    }
+
+    private static double round(double value) {
+        return Math.round(value * 1000) / 1000.0;
+    }
+}
@@ -0,0 +1,94 @@
+package nci.security_fundamentals.metrics;
+
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * OperationStats - Latency histogram, error count and slow-call log per named operation
+ *
+ * PURPOSE: One place that answers "how long does findByUsername take, how often does it
+ *          fail, and which calls were slow?" for a whole group of operations.
+ * USED BY: InstrumentedUserStore (one entry per UserStore method),
+ *          MongoCommandMetrics (one entry per MongoDB command: find, update, insert, ...)
+ *
+ * SLOW LOG: a call slower than the threshold is logged once at WARN with its detail,
+ *           e.g. "[DB] Slow user store call: findByUsername took 212.4 ms (alice)"
+ */
+public class OperationStats {
+    private static final Logger log = LoggerFactory.getLogger(OperationStats.class);
+
+    private final String name;
+    private final long slowThresholdNanos;
+    private final Map<String, Entry> entries = new ConcurrentHashMap<>();
+
+    /**
+     * @param name            Printed in the slow log and in summary(), e.g. "user store"
+     * @param slowThresholdMs Calls at or above this are logged, 0 = never
+     */
+    public OperationStats(String name, long slowThresholdMs) {
+        this.name = name;
+        this.slowThresholdNanos = slowThresholdMs <= 0 ? Long.MAX_VALUE : TimeUnit.MILLISECONDS.toNanos(slowThresholdMs);
+    }
+
+    /**
+     * Record one finished call
+     *
+     * @param operation e.g. "findByUsername"
+     * @param nanos     how long it took
+     * @param failed    true if it threw / the command failed
+     * @param detail    printed in the slow log only (may be null) - never pass secrets
+     */
+    public void record(String operation, long nanos, boolean failed, String detail) {
+        Entry entry = entries.computeIfAbsent(operation, op -> new Entry());
+        entry.latency.record(nanos);
+        if (failed) {
+            entry.errors.incrementAndGet();
+        }
+        if (nanos >= slowThresholdNanos) {
+            entry.slow.incrementAndGet();
+            if (log.isWarnEnabled()) {
+                log.warn("[DB] Slow {} call: {} took {} ms{}{}", name, operation,
+                        String.format("%.1f", LatencyHistogram.millis(nanos)), failed ? " (failed)" : "",
+                        detail != null ? " (" + detail + ")" : "");
+            }
+        }
+    }
+
+    public LatencyHistogram getLatency(String operation) {
+        Entry entry = entries.get(operation);
+        return entry != null ? entry.latency : null;
+    }
+
+    public long getErrorCount(String operation) {
+        Entry entry = entries.get(operation);
+        return entry != null ? entry.errors.get() : 0;
+    }
+
+    /**
+     * One line per operation, sorted by name
+     */
+    public String summary() {
+        StringBuilder sb = new StringBuilder("[METRICS] ").append(name).append(':');
+        if (entries.isEmpty()) {
+            return sb.append(" no calls yet").toString();
+        }
+        for (Map.Entry<String, Entry> e : new TreeMap<>(entries).entrySet()) {
+            sb.append(System.lineSeparator())
+              .append(String.format("  %-24s %s errors=%d slow=%d", e.getKey(), e.getValue().latency,
+                      e.getValue().errors.get(), e.getValue().slow.get()));
+        }
+        return sb.toString();
+    }
+
+    private static class Entry {
+        final LatencyHistogram latency = new LatencyHistogram();
+        final AtomicLong errors = new AtomicLong();
+        final AtomicLong slow = new AtomicLong();
+    }
+}
@@ -0,0 +1,177 @@
+package nci.security_fundamentals.security;
+
+import javax.crypto.Cipher;
+import javax.crypto.SecretKey;
+import javax.crypto.spec.GCMParameterSpec;
+import java.nio.charset.StandardCharsets;
+import java.security.GeneralSecurityException;
+import java.security.SecureRandom;
+import java.util.Base64;
+import java.util.regex.Pattern;
+
+/**
+ * AesGcmUtils - Chat messages in AES-GCM: encryption and integrity in one pass
+ *
+ * PURPOSE: Replace "AES-CBC, then HMAC-SHA256 over the ciphertext" with one primitive.
+ *          GCM's tag covers the ciphertext AND the associated data (sender, session, seq),
+ *          so the server checks one tag instead of recomputing an HMAC, and there is one
+ *          Base64 string per message instead of two.
+ * USED BY: ChatClient (seal / open), ClientHandler (open - the server only verifies),
+ *          FileTransferManager (binary seal / open for file chunks)
+ *
+ * FRAME: "G1:<sessionId>:<seq>:Base64(IV || ciphertext || tag)"
+ * - sessionId  random per connection, chosen by the server during cipher negotiation
+ * - seq        per-connection counter from 1, must increase (the server drops replays)
+ * - IV         12 random bytes, tag 16 bytes
+ * The associated data is sender + sessionId + seq. None of it is secret, but changing any
+ * of it (another sender name, a frame replayed into another session) breaks the tag.
+ *
+ * Key: the same AES_SECRET_KEY as the CBC mode. Random 96-bit IVs keep a single key
+ * safe for about 2^32 messages.
+ */
+public class AesGcmUtils {
+    public static final String FRAME_PREFIX = "G1:";
+    private static final String TRANSFORMATION = "AES/GCM/NoPadding";
+    private static final int IV_LENGTH = 12;
+    private static final int TAG_BITS = 128;
+    // Bytes the binary seal() adds to the plaintext: IV + tag
+    public static final int OVERHEAD = IV_LENGTH + TAG_BITS / 8;
+    private static final SecureRandom RANDOM = new SecureRandom();
+    // What newSessionId() produces: 9 random bytes as 12 URL-safe Base64 characters
+    private static final Pattern SESSION_ID = Pattern.compile("[A-Za-z0-9_-]{12}");
+    // One Cipher per thread, re-initialised with a fresh IV per message (see AesUtils)
+    private static final ThreadLocal<Cipher> CIPHERS = ThreadLocal.withInitial(() -> AesUtils.newCipher(TRANSFORMATION));
+
+    /**
+     * A parsed GCM frame - the payload is still encrypted
+     */
+    public static class Frame {
+        private final String sessionId;
+        private final long seq;
+        private final String payload;
+
+        private Frame(String sessionId, long seq, String payload) {
+            this.sessionId = sessionId;
+            this.seq = seq;
+            this.payload = payload;
+        }
+
+        public String getSessionId() {
+            return sessionId;
+        }
+
+        public long getSeq() {
+            return seq;
+        }
+    }
+
+    public static boolean isFrame(String data) {
+        return data != null && data.startsWith(FRAME_PREFIX);
+    }
+
+    /**
+     * Split a frame into session, seq and payload
+     * @return null if it is not a well-formed GCM frame
+     */
+    public static Frame parse(String data) {
+        if (!isFrame(data)) {
+            return null;
+        }
+        int sessionEnd = data.indexOf(':', FRAME_PREFIX.length());
+        int seqEnd = sessionEnd < 0 ? -1 : data.indexOf(':', sessionEnd + 1);
+        if (seqEnd < 0) {
+            return null;
+        }
+        try {
+            long seq = Long.parseLong(data.substring(sessionEnd + 1, seqEnd));
+            return new Frame(data.substring(FRAME_PREFIX.length(), sessionEnd), seq, data.substring(seqEnd + 1));
+        } catch (NumberFormatException e) {
+            return null;
+        }
+    }
+
+    /**
+     * Encrypt a chat message from sender into a frame
+     */
+    public static String seal(SecretKey key, String sender, String sessionId, long seq, String message) throws GeneralSecurityException {
+        byte[] plain = message.getBytes(StandardCharsets.UTF_8);
+        byte[] sealed = seal(key, associatedData(sender, sessionId, seq), plain, 0, plain.length);
+        return FRAME_PREFIX + sessionId + ":" + seq + ":" + Base64.getEncoder().encodeToString(sealed);
+    }
+
+    /**
+     * Binary form: IV || ciphertext || tag, with the caller's associated data
+     * (file chunks use this - no Base64, no frame text)
+     */
+    public static byte[] seal(SecretKey key, byte[] aad, byte[] data, int offset, int length) throws GeneralSecurityException {
+        byte[] iv = new byte[IV_LENGTH];
+        RANDOM.nextBytes(iv);
+
+        Cipher cipher = CIPHERS.get();
+        cipher.init(Cipher.ENCRYPT_MODE, key, new GCMParameterSpec(TAG_BITS, iv));
+        cipher.updateAAD(aad);
+
+        byte[] out = new byte[IV_LENGTH + cipher.getOutputSize(length)];
+        System.arraycopy(iv, 0, out, 0, IV_LENGTH);
+        cipher.doFinal(data, offset, length, out, IV_LENGTH);
+        return out;
+    }
+
+    /**
+     * Check and decrypt IV || ciphertext || tag made by the binary seal()
+     * @throws GeneralSecurityException (AEADBadTagException) if the data or aad was altered
+     */
+    public static byte[] open(SecretKey key, byte[] aad, byte[] sealed) throws GeneralSecurityException {
+        if (sealed.length < OVERHEAD) {
+            throw new GeneralSecurityException("GCM payload too short");
+        }
+        Cipher cipher = CIPHERS.get();
+        cipher.init(Cipher.DECRYPT_MODE, key, new GCMParameterSpec(TAG_BITS, sealed, 0, IV_LENGTH));
+        cipher.updateAAD(aad);
+        return cipher.doFinal(sealed, IV_LENGTH, sealed.length - IV_LENGTH);
+    }
+
+    /**
+     * Decrypt a frame and check its tag against sender, session and seq
+     * @throws GeneralSecurityException (AEADBadTagException) if anything was altered
+     */
+    public static String open(SecretKey key, String sender, Frame frame) throws GeneralSecurityException {
+        byte[] data;
+        try {
+            data = Base64.getDecoder().decode(frame.payload);
+        } catch (IllegalArgumentException e) {
+            throw new GeneralSecurityException("GCM payload is not Base64");
+        }
+        return new String(open(key, associatedData(sender, frame.sessionId, frame.seq), data), StandardCharsets.UTF_8);
+    }
+
+    public static String open(SecretKey key, String sender, String data) throws GeneralSecurityException {
+        Frame frame = parse(data);
+        if (frame == null) {
+            throw new GeneralSecurityException("Not a GCM frame");
+        }
+        return open(key, sender, frame);
+    }
+
+    /**
+     * A fresh random session id for one connection (URL-safe Base64, no ':')
+     */
+    public static String newSessionId() {
+        byte[] id = new byte[9];
+        RANDOM.nextBytes(id);
+        return Base64.getUrlEncoder().withoutPadding().encodeToString(id);
+    }
+
+    /**
+     * True if the id has newSessionId()'s format - ids from the network are checked before
+     * they are used, e.g. in a file name
+     */
+    public static boolean isSessionId(String id) {
+        return id != null && SESSION_ID.matcher(id).matches();
+    }
+
+    // sender \0 sessionId \0 seq - the separators keep ("ab","c") and ("a","bc") apart
+    private static byte[] associatedData(String sender, String sessionId, long seq) {
+        return (sender + '\0' + sessionId + '\0' + seq).getBytes(StandardCharsets.UTF_8);
+    }
+}
@@ -5,6 +5,9 @@ import javax.crypto.KeyGenerator;
 import javax.crypto.SecretKey;
 import javax.crypto.spec.IvParameterSpec;
 import javax.crypto.spec.SecretKeySpec;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.security.GeneralSecurityException;
 import java.security.SecureRandom;
 import java.util.Base64;
 
@@ -13,11 +16,29 @@ import java.util.Base64;
  *
  * AesUtils encrypts and decrypts messages using AES-128 in CBC mode.
  * Each message gets a random IV and is transmitted as Base64(IV):Base64(ciphertext).
+ *
+ * Binary API: encrypt(key, ByteBuffer, ByteBuffer) / decrypt(key, ByteBuffer, ByteBuffer)
+ * write IV || ciphertext straight into a caller-supplied buffer - no Base64, no Strings.
+ * Each thread keeps its own Cipher (Cipher.getInstance is only called once per thread).
  */
 public class AesUtils {
     private static final String TRANSFORMATION = "AES/CBC/PKCS5Padding";
+    public static final int IV_LENGTH = 16;
+    private static final int BLOCK_SIZE = 16;
     private static final SecureRandom RANDOM = new SecureRandom();
 
+    // Cipher is not thread-safe; init() with a fresh IV is all a reused one needs
+    private static final ThreadLocal<Cipher> CIPHERS = ThreadLocal.withInitial(() -> newCipher(TRANSFORMATION));
+    private static final ThreadLocal<byte[]> IVS = ThreadLocal.withInitial(() -> new byte[IV_LENGTH]);
+
+    static Cipher newCipher(String transformation) {
+        try {
+            return Cipher.getInstance(transformation);
+        } catch (GeneralSecurityException e) {
+            throw new IllegalStateException("Cipher not available: " + transformation, e);
+        }
+    }
+
     public static SecretKey generateKey() throws Exception {
         KeyGenerator gen = KeyGenerator.getInstance("AES");
         gen.init(128);
@@ -32,27 +53,95 @@ public class AesUtils {
         return Base64.getEncoder().encodeToString(b);
     }
 
-    public static String encrypt(SecretKey key, String message) throws Exception {
-        byte[] iv = new byte[16];
+    /**
+     * Bytes encrypt() writes for a plaintext of this length: IV + padded ciphertext
+     */
+    public static int encryptedSize(int plainLength) {
+        return IV_LENGTH + (plainLength / BLOCK_SIZE + 1) * BLOCK_SIZE;
+    }
+
+    public static String encrypt(SecretKey key, String message) throws GeneralSecurityException {
+        byte[] iv = new byte[IV_LENGTH];
         RANDOM.nextBytes(iv);
-        IvParameterSpec ivSpec = new IvParameterSpec(iv);
 
-        Cipher cipher = Cipher.getInstance(TRANSFORMATION);
-        cipher.init(Cipher.ENCRYPT_MODE, key, ivSpec);
+        Cipher cipher = CIPHERS.get();
+        cipher.init(Cipher.ENCRYPT_MODE, key, new IvParameterSpec(iv));
 
-        byte[] encrypted = cipher.doFinal(message.getBytes());
+        byte[] encrypted = cipher.doFinal(message.getBytes(StandardCharsets.UTF_8));
         return base64(iv) + ":" + base64(encrypted);
     }
 
     public static String decrypt(SecretKey key, String data) throws Exception {
-        String[] parts = data.split(":");
-        byte[] iv = Base64.getDecoder().decode(parts[0]);
-        byte[] cipherBytes = Base64.getDecoder().decode(parts[1]);
+        // "Base64(IV):Base64(ciphertext)" - Base64 never contains ':', so the first one splits it
+        int sep = data.indexOf(':');
+        if (sep < 0) {
+            throw new IllegalArgumentException("Expected Base64(IV):Base64(ciphertext)");
+        }
+        Base64.Decoder decoder = Base64.getDecoder();
+        byte[] iv = decoder.decode(data.substring(0, sep));
+        byte[] cipherBytes = decoder.decode(data.substring(sep + 1));
 
-        Cipher cipher = Cipher.getInstance(TRANSFORMATION);
+        Cipher cipher = CIPHERS.get();
         cipher.init(Cipher.DECRYPT_MODE, key, new IvParameterSpec(iv));
 
         byte[] decrypted = cipher.doFinal(cipherBytes);
-        return new String(decrypted);
+        return new String(decrypted, StandardCharsets.UTF_8);
+    }
+
+    // ------------------ BINARY (ByteBuffer) ------------------
+
+    /**
+     * Encrypt the plaintext's remaining bytes into out as IV || ciphertext
+     *
+     * @param out Needs encryptedSize(plaintext.remaining()) bytes remaining
+     * @return bytes written to out (positions of both buffers move forward)
+     */
+    public static int encrypt(SecretKey key, ByteBuffer plaintext, ByteBuffer out) throws GeneralSecurityException {
+        int needed = encryptedSize(plaintext.remaining());
+        if (out.remaining() < needed) {
+            throw new IllegalArgumentException("Output buffer needs " + needed + " bytes, has " + out.remaining());
+        }
+        byte[] iv = IVS.get();
+        RANDOM.nextBytes(iv);
+
+        Cipher cipher = CIPHERS.get();
+        cipher.init(Cipher.ENCRYPT_MODE, key, new IvParameterSpec(iv));
+        out.put(iv);
+        return IV_LENGTH + cipher.doFinal(plaintext, out);
+    }
+
+    /**
+     * Decrypt IV || ciphertext (the input's remaining bytes) into out
+     *
+     * @param out Needs at least input.remaining() - IV_LENGTH bytes remaining
+     * @return plaintext bytes written to out
+     */
+    public static int decrypt(SecretKey key, ByteBuffer input, ByteBuffer out) throws GeneralSecurityException {
+        if (input.remaining() < IV_LENGTH + BLOCK_SIZE) {
+            throw new GeneralSecurityException("Ciphertext too short");
+        }
+        byte[] iv = IVS.get();
+        input.get(iv);
+
+        Cipher cipher = CIPHERS.get();
+        cipher.init(Cipher.DECRYPT_MODE, key, new IvParameterSpec(iv));
+        return cipher.doFinal(input, out);
+    }
+
+    /**
+     * Convenience: IV || ciphertext as one array
+     */
+    public static byte[] encryptToBytes(SecretKey key, byte[] plaintext) throws GeneralSecurityException {
+        ByteBuffer out = ByteBuffer.allocate(encryptedSize(plaintext.length));
+        encrypt(key, ByteBuffer.wrap(plaintext), out);
+        return out.array();
+    }
+
+    public static byte[] decryptBytes(SecretKey key, byte[] ivAndCiphertext) throws GeneralSecurityException {
+        ByteBuffer out = ByteBuffer.allocate(Math.max(0, ivAndCiphertext.length - IV_LENGTH));
+        int length = decrypt(key, ByteBuffer.wrap(ivAndCiphertext), out);
+        byte[] plain = new byte[length];
+        System.arraycopy(out.array(), 0, plain, 0, length);
+        return plain;
     }
 }
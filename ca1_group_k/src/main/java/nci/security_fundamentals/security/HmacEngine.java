@@ -0,0 +1,146 @@
+package nci.security_fundamentals.security;
+
+import java.nio.ByteBuffer;
+import java.security.GeneralSecurityException;
+import java.security.MessageDigest;
+
+import javax.crypto.Mac;
+import javax.crypto.ShortBufferException;
+import javax.crypto.spec.SecretKeySpec;
+
+/**
+ * HmacEngine - HMAC-SHA256 with one ready-keyed Mac per thread
+ *
+ * PURPOSE: Sign and verify bytes without repeating the setup work on every call.
+ * USED BY: HMACUtils (chat message integrity), ResumptionTicketService (ticket MACs)
+ *
+ * WHY IT IS CHEAP:
+ * - Mac.getInstance() and init() happen once per thread, not once per message
+ *   (doFinal() leaves the Mac ready for the next message with the same key)
+ * - The key bytes are copied into a SecretKeySpec once, in the constructor
+ * - byte[] / ByteBuffer in, byte[] out - no Base64 or String round trips
+ * - verify() computes into a per-thread scratch array, so a check allocates nothing
+ *
+ * SECURITY: verify() compares with MessageDigest.isEqual, which takes the same time
+ *           wherever the first differing byte is (String.equals does not).
+ *
+ * Thread-safe: each thread uses its own Mac.
+ */
+public final class HmacEngine {
+
+    public static final String ALGORITHM = "HmacSHA256";
+    public static final int MAC_LENGTH = 32;
+
+    private final SecretKeySpec key;
+    private final ThreadLocal<Mac> macs;
+    private final ThreadLocal<byte[]> scratch = ThreadLocal.withInitial(() -> new byte[MAC_LENGTH]);
+
+    /**
+     * @param keyBytes The shared secret (copied - later changes to the array have no effect)
+     */
+    public HmacEngine(byte[] keyBytes) {
+        this.key = new SecretKeySpec(keyBytes, ALGORITHM);
+        this.macs = ThreadLocal.withInitial(this::newMac);
+        // Fail now on a bad key, not on the first message
+        macs.get();
+    }
+
+    private Mac newMac() {
+        try {
+            Mac mac = Mac.getInstance(ALGORITHM);
+            mac.init(key);
+            return mac;
+        } catch (GeneralSecurityException e) {
+            throw new IllegalStateException("Cannot initialise " + ALGORITHM, e);
+        }
+    }
+
+    // ------------------ SIGN ------------------
+
+    public byte[] mac(byte[] data) {
+        return mac(data, 0, data.length);
+    }
+
+    public byte[] mac(byte[] data, int offset, int length) {
+        Mac mac = macs.get();
+        mac.update(data, offset, length);
+        return mac.doFinal();
+    }
+
+    /**
+     * MAC over several pieces as if they were concatenated (e.g. sender, ": ", ciphertext)
+     * without building the concatenated array
+     */
+    public byte[] macParts(byte[]... parts) {
+        Mac mac = macs.get();
+        for (byte[] part : parts) {
+            mac.update(part);
+        }
+        return mac.doFinal();
+    }
+
+    /**
+     * MAC over the buffer's remaining bytes (position moves to the limit), written into out
+     *
+     * @param out    Receives MAC_LENGTH bytes at outOffset
+     */
+    public void mac(ByteBuffer data, byte[] out, int outOffset) {
+        Mac mac = macs.get();
+        mac.update(data);
+        try {
+            mac.doFinal(out, outOffset);
+        } catch (ShortBufferException e) {
+            mac.reset();
+            throw new IllegalArgumentException("Output needs " + MAC_LENGTH + " bytes from offset " + outOffset, e);
+        }
+    }
+
+    // ------------------ VERIFY ------------------
+
+    public boolean verify(byte[] data, byte[] expectedMac) {
+        if (expectedMac == null || expectedMac.length != MAC_LENGTH) {
+            return false;
+        }
+        Mac mac = macs.get();
+        mac.update(data);
+        return finishAndCompare(mac, expectedMac);
+    }
+
+    /**
+     * Constant-time check of a MAC over several concatenated pieces
+     */
+    public boolean verifyParts(byte[] expectedMac, byte[]... parts) {
+        if (expectedMac == null || expectedMac.length != MAC_LENGTH) {
+            return false;
+        }
+        Mac mac = macs.get();
+        for (byte[] part : parts) {
+            mac.update(part);
+        }
+        return finishAndCompare(mac, expectedMac);
+    }
+
+    /**
+     * Constant-time check of a MAC over the buffer's remaining bytes
+     */
+    public boolean verify(ByteBuffer data, byte[] expectedMac) {
+        if (expectedMac == null || expectedMac.length != MAC_LENGTH) {
+            return false;
+        }
+        Mac mac = macs.get();
+        mac.update(data);
+        return finishAndCompare(mac, expectedMac);
+    }
+
+    private boolean finishAndCompare(Mac mac, byte[] expectedMac) {
+        byte[] computed = scratch.get();
+        try {
+            mac.doFinal(computed, 0);
+        } catch (ShortBufferException e) {
+            // Cannot happen - scratch is exactly MAC_LENGTH long
+            mac.reset();
+            throw new IllegalStateException(e);
+        }
+        return MessageDigest.isEqual(computed, expectedMac);
+    }
+}
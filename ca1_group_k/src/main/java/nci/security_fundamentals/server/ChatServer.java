@@ -1,21 +1,33 @@
 package nci.security_fundamentals.server;
 
 import nci.security_fundamentals.auth.AuthService;
+import nci.security_fundamentals.auth.ResumptionTicketService;
+import nci.security_fundamentals.auth.TokenRevocationList;
 import nci.security_fundamentals.config.EnvConfig;
-import nci.security_fundamentals.server.db.User_repository;
-
-import com.mongodb.client.MongoClient;
-import com.mongodb.client.MongoClients;
-import com.mongodb.client.MongoDatabase;
+import nci.security_fundamentals.server.db.AsyncUserRepository;
+import nci.security_fundamentals.server.db.ChatMessageStore;
+import nci.security_fundamentals.server.db.InstrumentedUserStore;
+import nci.security_fundamentals.server.db.MongoConnectionManager;
+import nci.security_fundamentals.server.db.UserStore;
+import nci.security_fundamentals.server.db.UserStoreFactory;
+import nci.security_fundamentals.server.db.UserWriteBehindBuffer;
 
 import java.io.IOException;
 import java.net.ServerSocket;
 import java.net.Socket;
+import java.util.ArrayDeque;
 import java.util.ArrayList;
+import java.util.Date;
 import java.util.List;
 import java.util.concurrent.CopyOnWriteArrayList;
-import java.util.logging.Level;
-import java.util.logging.Logger;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
 
 /**
  * @Author Dylan White
@@ -29,16 +41,40 @@ import java.util.logging.Logger;
  * -broadcastMessage(): Sends messages to all connected clients
  * -addClient() / removeClient(): manages client connections
  * -sendChatHistory(): sends messages end before a new client joins
+ *
+ * SETTINGS (.env):
+ * - MAX_CLIENTS            users in the chat at once; one more is answered "SERVER_FULL" (default 10)
+ * - SERVER_ACCEPT_BACKLOG  connections the OS queues while accept() catches up (default 50)
+ * - CHAT_HISTORY_MAX_MESSAGES  newest messages kept in memory and replayed to joining clients;
+ *                              older ones are trimmed (default 1000)
+ *
+ * HISTORY POSITIONS: every message gets a position (0, 1, 2, ... since startup) that stays
+ * valid after older messages are trimmed - a resumed client asks for "everything from
+ * position n", and whatever of that is still held is replayed.
  */
 public class ChatServer {
+    private static final Logger log = LoggerFactory.getLogger(ChatServer.class);
+
     private int port;
     private ServerSocket serverSocket;
     private boolean isRunning;
     private List<ClientHandler> connectedClients;
-    private List<String> messageHistory;
+    private ArrayDeque<String> messageHistory;  // newest historyMax messages, guarded by itself
+    private long historyTrimmed;                // messages dropped from the front - the position of the oldest one held
+    private int historyMax;
     private AuthService authService;
+    private ResumptionTicketService ticketService;
+    private TokenRevocationList revocationList;
+    private UserWriteBehindBuffer userWriteBehind;
+    private AsyncUserRepository asyncUserRepository;
+    private ChatMessageStore messageStore;  // null with USER_STORE_BACKEND=memory (history not persisted)
+    private MongoConnectionManager mongo;  // null with USER_STORE_BACKEND=memory
+    private UserStore userStore;
+    private ScheduledExecutorService metricsLogger;  // null unless METRICS_LOG_SECONDS > 0
     private static final int DEFAULT_PORT = 8080;
-    private static final int MAX_CLIENTS = 10;
+    private static final int DEFAULT_MAX_CLIENTS = 10;
+    private int maxClients;
+    private Semaphore clientSlots;  // one permit per chat seat, taken before AUTH_SUCCESS
 
 
     public ChatServer(int port) {
@@ -46,50 +82,112 @@ public class ChatServer {
         try {
             this.port = port;
             this.isRunning = false;
+            this.maxClients = EnvConfig.getInt("MAX_CLIENTS", DEFAULT_MAX_CLIENTS);
+            this.clientSlots = new Semaphore(maxClients);
             this.connectedClients = new CopyOnWriteArrayList<>();
-            this.messageHistory = new CopyOnWriteArrayList<>();
+            this.messageHistory = new ArrayDeque<>();
+            this.historyMax = Math.max(1, EnvConfig.getInt("CHAT_HISTORY_MAX_MESSAGES", 1000));
+
+            // User store backend from the .env file (USER_STORE_BACKEND=mongo|memory)
+            this.userStore = UserStoreFactory.create();
+            for (String problem : userStore.ensureIndexes()) {
+                log.warn("[DB] Index problem: {}", problem);
+            }
+
+            // Revoked tokens are checked on every handshake (Bloom filter first, then the store)
+            if (UserStoreFactory.usesMongo()) {
+                // Shared MongoDB client - pool settings come from the .env file
+                this.mongo = MongoConnectionManager.getInstance();
+                this.revocationList = new TokenRevocationList(mongo.getDatabase());
 
-            // Get connection string and database name from .env file
-            String connectionString = EnvConfig.getRequired("MONGODB_CONNECTION_STRING");
-            String databaseName = EnvConfig.getRequired("MONGODB_DATABASE_NAME");
+                // Chat history in minute buckets - reload recent messages so a restart keeps them
+                this.messageStore = new ChatMessageStore(mongo.getDatabase());
+                loadPersistedHistory();
+            } else {
+                this.revocationList = TokenRevocationList.inMemory();
+            }
+            log.info("[SERVER] User store backend: {}", UserStoreFactory.backend());
 
-            // Create MongoDB connection
-            MongoClient mongoClient = MongoClients.create(connectionString);
-            MongoDatabase database = mongoClient.getDatabase(databaseName);
+            // lastLogin updates are batched instead of one write per login
+            this.userWriteBehind = new UserWriteBehindBuffer(userStore);
 
-            // Create userRepository with database
-            User_repository userRepository = new User_repository(database);
+            // Bounded pool for lookups that can run side by side (e.g. registration checks)
+            this.asyncUserRepository = new AsyncUserRepository(userStore);
 
             // Create AuthService with the repository
-            this.authService = new AuthService(userRepository);
+            this.authService = new AuthService(userStore, revocationList, userWriteBehind, asyncUserRepository);
+            this.ticketService = new ResumptionTicketService();
 
-            System.out.println("[SERVER] ChatServer initialized successfully");
+            log.info("[SERVER] ChatServer initialized successfully");
 
         } catch (Exception e) {
-            System.err.println("[ERROR] Failed to initialize ChatServer: " + e.getMessage());
-            e.printStackTrace();
+            log.error("[ERROR] Failed to initialize ChatServer: {}", e.getMessage(), e);
+        }
+    }
+    /**
+     * Optional periodic latency report (user store calls + MongoDB commands).
+     * Started with the server, not in the constructor, so no thread sees a half-built ChatServer.
+     */
+    private synchronized void startMetricsLogger() {
+        long metricsSeconds = EnvConfig.getLong("METRICS_LOG_SECONDS", 0);
+        if (metricsSeconds <= 0 || metricsLogger != null) {
+            return;
         }
+        this.metricsLogger = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread t = new Thread(r, "metrics-log");
+            t.setDaemon(true);
+            return t;
+        });
+        metricsLogger.scheduleAtFixedRate(this::printMetrics, metricsSeconds, metricsSeconds, TimeUnit.SECONDS);
     }
+
+    private void loadPersistedHistory() {
+        long hours = EnvConfig.getLong("CHAT_HISTORY_LOAD_HOURS", 24);
+        Date now = new Date();
+        Date from = new Date(now.getTime() - TimeUnit.HOURS.toMillis(hours));
+        List<String> history = messageStore.loadHistory(ChatMessageStore.DEFAULT_ROOM, from, now, historyMax);
+        for (String message : history) {
+            addToHistory(message);
+        }
+        log.info("[HISTORY] Loaded {} messages from the last {}h", history.size(), hours);
+    }
+
+    /**
+     * Latency histograms for the user store and for MongoDB commands - the gap between
+     * the two is time spent in the driver and waiting for a pooled connection
+     */
+    public void printMetrics() {
+        if (userStore instanceof InstrumentedUserStore instrumented) {
+            log.info(instrumented.getStats().summary());
+        }
+        if (mongo != null) {
+            log.info(mongo.getCommandMetrics().getStats().summary());
+            log.info("[METRICS] MongoDB pool: {}", mongo.getPoolMetrics());
+        }
+    }
+
     public static void main(String[] args) {
         ChatServer server = new ChatServer(DEFAULT_PORT);
+        Runtime.getRuntime().addShutdownHook(new Thread(server::stopServer));
         server.startServer();
     }
 
     public void startServer() {
+        startMetricsLogger();
         try {
-            serverSocket = new ServerSocket(port);
+            serverSocket = new ServerSocket(port, EnvConfig.getInt("SERVER_ACCEPT_BACKLOG", 50));
             isRunning = true;
-            System.out.println("[SERVER] Server started on port " + port);
+            log.info("[SERVER] Server started on port {} (max {} clients)", port, maxClients);
             while (isRunning) {
                 Socket clientSocket = serverSocket.accept();
-                System.out.println("[SERVER] Accepted connection from " + clientSocket.getInetAddress().getHostAddress());
+                log.info("[SERVER] Accepted connection from {}", clientSocket.getInetAddress().getHostAddress());
 
                 //Starting a new thread for each client
                 ClientHandler clientHandler = new ClientHandler(clientSocket, this);
                 new Thread(clientHandler).start();
             }
         } catch(IOException e) {
-            System.out.println("[ERROR] Server start failed on port " + port);
+            log.error("[ERROR] Server start failed on port {}", port, e);
         }
     }
 
@@ -107,55 +205,181 @@ public class ChatServer {
                 serverSocket.close();
             }
         } catch (IOException e) {
-            System.err.println("[ERROR] Error closing server socket");
+            log.error("[ERROR] Error closing server socket", e);
+        }
+
+        if (revocationList != null) {
+            revocationList.close();
+        }
+
+        if (asyncUserRepository != null) {
+            asyncUserRepository.close();
+        }
+
+        // Write out queued chat messages before the pool closes
+        if (messageStore != null) {
+            messageStore.close();
+            log.info("[SERVER] Chat message store at shutdown: {}", messageStore.getStats());
+        }
+
+        // Write out queued lastLogin updates before the pool closes
+        if (userWriteBehind != null) {
+            userWriteBehind.close();
+            log.info("[SERVER] User write-behind at shutdown: {}", userWriteBehind.getStats());
+        }
+
+        // In-memory store writes its final snapshot here
+        if (userStore != null) {
+            userStore.close();
+        }
+
+        if (metricsLogger != null) {
+            metricsLogger.shutdownNow();
+        }
+        printMetrics();
+
+        // Release every pooled MongoDB connection
+        if (mongo != null) {
+            mongo.close();
         }
 
-        // Clear message history
-        messageHistory.clear();
-        System.out.println("[SERVER] Message history cleared");
-        System.out.println("[SERVER] Server stopped");
+        // Clear message history (positions keep counting, so old cursors stay past the start)
+        synchronized (messageHistory) {
+            historyTrimmed += messageHistory.size();
+            messageHistory.clear();
+        }
+        log.info("[SERVER] Message history cleared");
+        log.info("[SERVER] Server stopped");
     }
 
     public synchronized void addClient(ClientHandler client) {
-        if (connectedClients.size() < MAX_CLIENTS) {
-            connectedClients.add(client);
-            System.out.println("[AUTH] " + client.getUsername() + " authenticated and joined chat");
+        addClient(client, getHistoryStart());
+    }
+
+    /**
+     * Add a client and replay the history from position historyFrom on
+     * (a resumed session only needs the messages it missed)
+     */
+    public synchronized void addClient(ClientHandler client, long historyFrom) {
+        // The seat was taken with reserveSlot() before AUTH_SUCCESS
+        connectedClients.add(client);
+        log.info("[AUTH] {} authenticated and joined chat", client.getUsername());
+
+        // Send chat history to new client
+        sendChatHistory(client, historyFrom);
+    }
 
-            // Send chat history to new client
-            sendChatHistory(client);
-        } else if (connectedClients.size() > MAX_CLIENTS) {
-            System.out.println("[ERROR] Too many connections");
+    /**
+     * Take a chat seat for a client that is about to be authenticated
+     * @return false if MAX_CLIENTS users are already in the chat
+     */
+    public boolean reserveSlot() {
+        if (clientSlots.tryAcquire()) {
+            return true;
         }
+        log.warn("[SERVER] Server full ({} clients) - connection rejected", maxClients);
+        return false;
+    }
+
+    public void releaseSlot() {
+        clientSlots.release();
     }
 
     public synchronized void removeClient(ClientHandler client) {
         if (connectedClients.remove(client)) {
-            System.out.println("[DISCONNECT] " + client.getUsername() + " left. Users online: " + connectedClients.size());
+            log.info("[DISCONNECT] {} left. Users online: {}", client.getUsername(), connectedClients.size());
         }
     }
 
 
     public void broadcastMessage(String sender, String message) {
         String fullMessage = sender + ": " + message;
-        messageHistory.add(fullMessage);  // Store in ArrayList
+        addToHistory(fullMessage);
 
-        System.out.println("[MSG] Received from " + sender + ": \"" + message + "\"");
-        System.out.println("[FILE] Message saved");
-        System.out.println("[BROADCAST] Sent to " + connectedClients.size() + " users");
+        // Per-message lines are DEBUG - with DEBUG off, the {} placeholders are never formatted
+        log.debug("[MSG] Received from {}: \"{}\"", sender, message);
+        // Queued only - written to MongoDB in batches by the store's own thread
+        if (messageStore != null && messageStore.persist(ChatMessageStore.DEFAULT_ROOM, sender, message)) {
+            log.debug("[FILE] Message queued for MongoDB");
+        }
+        log.debug("[BROADCAST] Sent to {} users", connectedClients.size());
 
         for (ClientHandler client : connectedClients) {
             client.sendMessage(sender, message);
         }
     }
 
+    /**
+     * Pass a file offer or chunk on to every client except the sender.
+     * Only queued here (see FileRelayQueue) - each receiver's socket is written by its own
+     * thread, so the sender's handler never waits on a slow receiver.
+     *
+     * @param queued Run once every receiver has queued the frame (null if nobody waits for it)
+     */
+    public void relayFileFrame(ClientHandler from, String frame, byte[] chunk, Runnable queued) {
+        AtomicInteger pending = new AtomicInteger(1);  // 1 = this loop, so queued cannot run early
+        Runnable oneQueued = () -> {
+            if (pending.decrementAndGet() == 0 && queued != null) {
+                queued.run();
+            }
+        };
+        for (ClientHandler client : connectedClients) {
+            if (client != from) {
+                pending.incrementAndGet();
+                client.queueFileFrame(frame, chunk, oneQueued);
+            }
+        }
+        oneQueued.run();
+    }
+
+    /**
+     * Keep a message, trimming the oldest once historyMax are held
+     */
+    private void addToHistory(String message) {
+        synchronized (messageHistory) {
+            messageHistory.addLast(message);
+            if (messageHistory.size() > historyMax) {
+                messageHistory.removeFirst();
+                historyTrimmed++;
+            }
+        }
+    }
+
+    /**
+     * Position of the oldest message still held - where a full replay starts
+     */
+    public long getHistoryStart() {
+        synchronized (messageHistory) {
+            return historyTrimmed;
+        }
+    }
+
     public void sendChatHistory(ClientHandler newClient) {
-        if (messageHistory.isEmpty()) {
-            System.out.println("[HISTORY] No previous messages for " + newClient.getUsername());
+        sendChatHistory(newClient, getHistoryStart());
+    }
+
+    public void sendChatHistory(ClientHandler newClient, long fromPosition) {
+        List<String> missed;
+        synchronized (messageHistory) {
+            long end = historyTrimmed + messageHistory.size();
+            // Past the end means history was cleared since the ticket was issued - resend everything;
+            // before the start means the oldest missed messages were trimmed - send what is left
+            long start = (fromPosition > end) ? historyTrimmed : Math.max(fromPosition, historyTrimmed);
+            missed = new ArrayList<>((int) (end - start));
+            int skip = (int) (start - historyTrimmed);
+            for (String message : messageHistory) {
+                if (skip-- <= 0) {
+                    missed.add(message);
+                }
+            }
+        }
+        if (missed.isEmpty()) {
+            log.debug("[HISTORY] No previous messages for {}", newClient.getUsername());
             return;
         }
 
-        System.out.println("[HISTORY] Sending " + messageHistory.size() + " previous messages to " + newClient.getUsername());
-        for (String message : messageHistory) {
+        log.debug("[HISTORY] Sending {} previous messages to {}", missed.size(), newClient.getUsername());
+        for (String message : missed) {
             newClient.sendHistoryMessage(message);
         }
     }
@@ -165,10 +389,16 @@ public class ChatServer {
     }
 
     public List<String> getMessageHistory() {
-        return new ArrayList<>(messageHistory);
+        synchronized (messageHistory) {
+            return new ArrayList<>(messageHistory);
+        }
     }
     public AuthService getAuthService() {
         return authService;
     }
 
+    public ResumptionTicketService getTicketService() {
+        return ticketService;
+    }
+
 }
@@ -2,16 +2,56 @@ package nci.security_fundamentals.server;
 
 import nci.security_fundamentals.config.HMACUtils;
 import nci.security_fundamentals.auth.AuthService;
-import nci.security_fundamentals.server.models.User;
+import nci.security_fundamentals.auth.ResumptionTicketService;
+import nci.security_fundamentals.config.EnvConfig;
+import nci.security_fundamentals.security.AesGcmUtils;
+import nci.security_fundamentals.security.AesUtils;
+import nci.security_fundamentals.server.models.UserAuthView;
 
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import javax.crypto.SecretKey;
 import java.io.*;
 import java.net.Socket;
+import java.security.GeneralSecurityException;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicInteger;
 
 /**
  * @Author Dylan White
  * ClientHandler - Manages a single client connection
- * Runs in a seperate thread for each connected client. Handles JWT auth,
- * receives messages, verifies HMAC signature and sends messages/history to the client
+ * Runs in a seperate thread for each connected client. Handles login/registration
+ * requests and JWT auth, receives messages, verifies HMAC signature and sends
+ * messages/history to the client
+ *
+ * Handshake frames (before chat):
+ * -"LOGIN", username, AES(password)            -> "LOGIN_SUCCESS:<jwt>" / "LOGIN_FAILED:<reason>"
+ * -"REGISTER", username, email, AES(password)  -> "REGISTER_SUCCESS:<msg>" / "REGISTER_FAILED:<msg>"
+ * -"CIPHERS:AES-GCM,CBC-HMAC"                 -> "CIPHER:AES-GCM:<sessionId>" / "CIPHER:CBC-HMAC"
+ * -"RESUME:<ticket>:<historyCursor>" or a JWT  -> "AUTH_SUCCESS" + "RESUME_TICKET:<ticket>"
+ *                                              or "SERVER_FULL" (MAX_CLIENTS reached, connection closed)
+ * Only the server talks to MongoDB; clients never get database credentials.
+ *
+ * Chat frames:
+ * -AES-GCM:  one frame "G1:<sessionId>:<seq>:<payload>" - the GCM tag is the integrity check
+ *            (sender, session and seq are in the associated data; seq must increase)
+ * -CBC-HMAC: AES-CBC ciphertext, then HMAC over "username: ciphertext" (clients that never offer GCM)
+ * Each chat message is answered with "MSG_ACK:<n>" (n = messages processed on this connection,
+ * relayed or dropped) so the client can clear its outbox - see client.Outbox.
+ *
+ * File frames (relayed to everyone else, one chunk at a time - see FileTransferManager):
+ * -"FILE_OFFER:<id>:<size>:<chunkSize>:<name>"  -> relayed with ":<username>" appended
+ * -"FILE_CHUNK:<id>:<offset>" + byte[] chunk     -> queued for every receiver, then "FILE_ACK:<id>:<endOffset>"
+ *                                                to the sender
+ * The chunk is still encrypted; receivers check its GCM tag. Each receiver's socket is written
+ * by its own FileRelayQueue thread, so chat frames never wait behind another client's socket.
+ *
+ * SETTINGS (.env):
+ * - CHAT_GCM_ENABLED  accept AES-GCM offers (default true)
+ * - FILE_MAX_BYTES    largest file a client may offer (default 1 GB)
+ * - FILE_RELAY_QUEUE  file frames queued per receiver (default 16, see FileRelayQueue)
  *
  * Key Methods:
  * -run(): auths client and listens for messages
@@ -19,6 +59,28 @@ import java.net.Socket;
  * -cleanup(): close connection and remove from server
  */
 public class ClientHandler implements Runnable{
+    private static final Logger log = LoggerFactory.getLogger(ClientHandler.class);
+
+    static final String RESUME_PREFIX = "RESUME:";
+    static final String TICKET_PREFIX = "RESUME_TICKET:";
+    static final String LOGIN_REQUEST = "LOGIN";
+    static final String REGISTER_REQUEST = "REGISTER";
+    static final String CIPHERS_PREFIX = "CIPHERS:";
+    static final String CIPHER_PREFIX = "CIPHER:";
+    static final String MODE_GCM = "AES-GCM";
+    static final String MODE_CBC_HMAC = "CBC-HMAC";
+    static final String FILE_OFFER_PREFIX = "FILE_OFFER:";
+    static final String FILE_CHUNK_PREFIX = "FILE_CHUNK:";
+    static final String FILE_ACK_PREFIX = "FILE_ACK:";
+    static final String FILE_REJECTED_PREFIX = "FILE_REJECTED:";
+    static final String MSG_ACK_PREFIX = "MSG_ACK:";
+    private static final int MAX_FILE_CHUNK = 256 * 1024;
+    private static final int MAX_OPEN_FILE_OFFERS = 8;
+    // Chunks of one upload relayed but not acknowledged yet - a client honouring its window stays far below
+    private static final int MAX_UNACKED_FILE_CHUNKS = 32;
+    // Login/register attempts allowed on one connection before the JWT must follow
+    private static final int MAX_ACCOUNT_REQUESTS = 5;
+
     private Socket socket;
     private ChatServer server;
     private String username;
@@ -26,6 +88,12 @@ public class ClientHandler implements Runnable{
     private ObjectOutputStream out;
     private volatile boolean isConnected;
     private AuthService authService;
+    private String gcmSessionId;   // set when this connection negotiated AES-GCM
+    private long lastGcmSeq;       // highest seq accepted in this session - lower ones are replays
+    private long chatMessages;     // chat messages processed on this connection - the MSG_ACK count
+    private boolean holdsSlot;     // took one of the server's MAX_CLIENTS seats
+    private final Map<String, FileOffer> fileOffers = new HashMap<>();  // uploads in progress on this connection
+    private volatile FileRelayQueue fileRelay;                          // file frames on their way to this client
 
     public ClientHandler(Socket socket, ChatServer server) {
         this.socket = socket;
@@ -38,7 +106,7 @@ public class ClientHandler implements Runnable{
             this.out.flush();
             this.in = new ObjectInputStream(socket.getInputStream());
         } catch (IOException e) {
-            System.err.println("[ERROR] Failed to initialize streams");
+            log.error("[ERROR] Failed to initialize streams", e);
             isConnected = false;
         }
     }
@@ -47,38 +115,102 @@ public class ClientHandler implements Runnable{
     public void run() {
 
         try {
-            // Receive JWT token from client
-            String jwtToken = (String) in.readObject();
+            // Serve LOGIN / REGISTER requests until the client sends its JWT or a RESUME ticket
+            String firstFrame = (String) in.readObject();
+            int accountRequests = 0;
+            while (LOGIN_REQUEST.equals(firstFrame) || REGISTER_REQUEST.equals(firstFrame)
+                    || (firstFrame != null && firstFrame.startsWith(CIPHERS_PREFIX))) {
+                if (++accountRequests > MAX_ACCOUNT_REQUESTS) {
+                    log.warn("[AUTH] Too many login/register attempts. Connection closed.");
+                    socket.close();
+                    return;
+                }
+                if (LOGIN_REQUEST.equals(firstFrame)) {
+                    handleLogin();
+                } else if (firstFrame.startsWith(CIPHERS_PREFIX)) {
+                    handleCipherOffer(firstFrame);
+                } else {
+                    handleRegister();
+                }
+                firstFrame = (String) in.readObject();
+            }
 
-            //Verify jwt token using authservice
-            if(!authService.isTokenValid(jwtToken)) {
-                System.out.println("[ERROR] Invalid JWT Token");
-                out.writeObject("Invalid JWT Token");
-                out.flush();
-                socket.close();
-                return;
+            // Next frame is either a JWT token or "RESUME:<ticket>:<historyCursor>"
+            String userId = null;
+            long sessionNotAfter = 0;  // the session's JWT expiry - later tickets never outlive it
+            long historyBase = 0;      // history position the client's cursor counts from
+            long historyFrom = 0;      // first history position this connection is sent
+
+            if (firstFrame != null && firstFrame.startsWith(RESUME_PREFIX)) {
+                ResumptionTicketService.Session session = resumeSession(firstFrame);
+                if (session != null && authService.isUserRevoked(session.getUserId())) {
+                    log.info("[AUTH] Resumption rejected - user's tokens were revoked");
+                    session = null;
+                }
+                if (session != null) {
+                    this.username = session.getUsername();
+                    userId = session.getUserId();
+                    sessionNotAfter = session.getNotAfter();
+                    historyBase = session.getHistoryBase();
+                    historyFrom = historyBase + parseHistoryCursor(firstFrame);
+                    log.info("[AUTH] {} resumed session with ticket", username);
+                } else {
+                    // Let the client fall back to its JWT on the same connection
+                    out.writeObject("RESUME_FAILED");
+                    out.flush();
+                    firstFrame = (String) in.readObject();
+                }
             }
 
-            // Extract username from token
-            this.username = authService.getUsernameFromToken(jwtToken);
+            if (userId == null) {
+                // Receive JWT token from client
+                String jwtToken = firstFrame;
+
+                //Verify jwt token using authservice
+                if(!authService.isTokenValid(jwtToken)) {
+                    log.warn("[ERROR] Invalid JWT Token");
+                    out.writeObject("Invalid JWT Token");
+                    out.flush();
+                    socket.close();
+                    return;
+                }
+
+                // Extract username from token
+                this.username = authService.getUsernameFromToken(jwtToken);
+
+                // Verify user exists in database
+                UserAuthView user = authService.authenticateWithToken(jwtToken);
+                if (user == null) {
+                    log.warn("[AUTH] User not found in database. Connection rejected.");
+                    out.writeObject("AUTH_FAILED");
+                    out.flush();
+                    socket.close();
+                    return;
+                }
+                userId = user.getId().toHexString();
+                sessionNotAfter = authService.getTokenExpiry(jwtToken);
+                // Full replay of the history the server still holds
+                historyBase = server.getHistoryStart();
+                historyFrom = historyBase;
+            }
 
-            // Verify user exists in database
-            User user = authService.authenticateWithToken(jwtToken);
-            if (user == null) {
-                System.out.println("[AUTH] User not found in database. Connection rejected.");
-                out.writeObject("AUTH_FAILED");
+            if (!server.reserveSlot()) {
+                out.writeObject("SERVER_FULL");
                 out.flush();
                 socket.close();
                 return;
             }
+            holdsSlot = true;
 
-            // Send auth success message
+            // Send auth success message, followed by a fresh ticket for the next reconnect
             out.writeObject("AUTH_SUCCESS");
+            out.writeObject(TICKET_PREFIX + server.getTicketService().issue(userId, username, sessionNotAfter, historyBase));
             out.flush();
-            System.out.println("[SERVER] Sent AUTH_SUCCESS to " + username);
+            log.debug("[SERVER] Sent AUTH_SUCCESS to {}", username);
 
             // Add client to server
-            server.addClient(this);
+            fileRelay = new FileRelayQueue(this, EnvConfig.getInt("FILE_RELAY_QUEUE", 16));
+            server.addClient(this, historyFrom);
 
             out.writeObject("[SERVER] Welcome, " + username + "! You have joined the chat.");
             out.flush();
@@ -88,37 +220,275 @@ public class ClientHandler implements Runnable{
                     //Receive message from client
                     String message = (String) in.readObject();
 
-                    //Receive HMAC from client
-                    String receivedHmac = (String) in.readObject();
-                    //Jordan when you send a message from client you will need to send message first and then hmac so this works properly
-
                     if (message == null) {
                         break;
                     }
 
-                    // Verify message integrity using HMAC
-                    String fullMessage = username + ": " + message;
-                    if (!HMACUtils.verifyHMAC(fullMessage, receivedHmac)) {
-                        System.err.println("[SECURITY] Message from " + username + " failed HMAC verification!");
+                    // File transfer frames - relayed chunk by chunk, never collected here
+                    if (message.startsWith(FILE_OFFER_PREFIX)) {
+                        handleFileOffer(message);
+                        continue;
+                    }
+                    if (message.startsWith(FILE_CHUNK_PREFIX)) {
+                        handleFileChunk(message, in.readObject());
+                        continue;
+                    }
+
+                    // AES-GCM frame - the tag already covers integrity, no HMAC frame follows
+                    if (AesGcmUtils.isFrame(message)) {
+                        if (verifyGcmFrame(message)) {
+                            server.broadcastMessage(username, message);
+                        }
+                        sendAck();
+                        continue;
+                    }
+
+                    //Receive HMAC from client
+                    String receivedHmac = (String) in.readObject();
+                    //Jordan when you send a message from client you will need to send message first and then hmac so this works properly
+
+                    // Verify message integrity using HMAC over "username: message"
+                    if (!HMACUtils.verifyHMAC(username, message, receivedHmac)) {
+                        log.warn("[SECURITY] Message from {} failed HMAC verification!", username);
+                        sendAck();  // dropped, but resending it would not help
                         continue;  //skip this message, don't broadcast
                     }
 
                     // Broadcast to all clients
                     server.broadcastMessage(username, message);
+                    sendAck();
 
                 } catch (EOFException e) {
                     break;
                 } catch (ClassNotFoundException e) {
-                    System.err.println("[ERROR] Invalid message format");
+                    log.warn("[ERROR] Invalid message format");
                 }
             }
         } catch (IOException | ClassNotFoundException e) {
-            System.err.println("[ERROR] Connection error: " + e.getMessage());
+            log.info("[ERROR] Connection error: {}", e.getMessage());
         } finally {
             cleanup();
         }
     }
 
+    /**
+     * "LOGIN", username, AES(password) - answer with a fresh JWT or the reason it failed
+     */
+    private void handleLogin() throws IOException, ClassNotFoundException {
+        String loginName = (String) in.readObject();
+        String encryptedPassword = (String) in.readObject();
+
+        String response;
+        try {
+            String result = authService.login(loginName, AesUtils.decrypt(chatKey(), encryptedPassword));
+            response = authService.isTokenValid(result) ? "LOGIN_SUCCESS:" + result : "LOGIN_FAILED:" + result;
+        } catch (Exception e) {
+            response = "LOGIN_FAILED:Could not log in";
+        }
+        log.info("[AUTH] Login request for {}: {}", loginName,
+                response.startsWith("LOGIN_SUCCESS") ? "success" : "failed");
+
+        out.writeObject(response);
+        out.flush();
+    }
+
+    /**
+     * "REGISTER", username, email, AES(password) - create the account in MongoDB
+     */
+    private void handleRegister() throws IOException, ClassNotFoundException {
+        String newUsername = (String) in.readObject();
+        String email = (String) in.readObject();
+        String encryptedPassword = (String) in.readObject();
+
+        String response;
+        try {
+            String result = authService.registerUser(newUsername, email, AesUtils.decrypt(chatKey(), encryptedPassword));
+            response = (result.startsWith("User registered successfully") ? "REGISTER_SUCCESS:" : "REGISTER_FAILED:") + result;
+        } catch (Exception e) {
+            response = "REGISTER_FAILED:Could not register user";
+        }
+        log.info("[AUTH] Register request for {}: {}", newUsername,
+                response.startsWith("REGISTER_SUCCESS") ? "success" : "failed");
+
+        out.writeObject(response);
+        out.flush();
+    }
+
+    /**
+     * "CIPHERS:<mode>,<mode>" - pick AES-GCM if offered (and enabled), otherwise CBC-HMAC
+     */
+    private void handleCipherOffer(String frame) throws IOException {
+        boolean gcmOffered = false;
+        for (String mode : frame.substring(CIPHERS_PREFIX.length()).split(",")) {
+            gcmOffered |= MODE_GCM.equals(mode.trim());
+        }
+
+        String response;
+        if (gcmOffered && !"false".equalsIgnoreCase(EnvConfig.get("CHAT_GCM_ENABLED"))) {
+            gcmSessionId = AesGcmUtils.newSessionId();
+            lastGcmSeq = 0;
+            response = CIPHER_PREFIX + MODE_GCM + ":" + gcmSessionId;
+        } else {
+            gcmSessionId = null;
+            response = CIPHER_PREFIX + MODE_CBC_HMAC;
+        }
+        out.writeObject(response);
+        out.flush();
+    }
+
+    /**
+     * Check a "G1:..." frame: negotiated session, increasing seq, valid GCM tag for this user.
+     * The plaintext is thrown away - the server only relays the frame.
+     */
+    private boolean verifyGcmFrame(String message) {
+        AesGcmUtils.Frame frame = AesGcmUtils.parse(message);
+        if (gcmSessionId == null || frame == null || !gcmSessionId.equals(frame.getSessionId())) {
+            log.warn("[SECURITY] GCM frame from {} outside its negotiated session - dropped", username);
+            return false;
+        }
+        if (frame.getSeq() <= lastGcmSeq) {
+            log.warn("[SECURITY] Replayed GCM frame from {} (seq {}) - dropped", username, frame.getSeq());
+            return false;
+        }
+        try {
+            AesGcmUtils.open(chatKey(), username, frame);
+        } catch (GeneralSecurityException e) {
+            log.warn("[SECURITY] Message from {} failed GCM verification!", username);
+            return false;
+        }
+        lastGcmSeq = frame.getSeq();
+        return true;
+    }
+
+    /**
+     * "FILE_OFFER:<id>:<size>:<chunkSize>:<name>" - check the limits, remember it, tell everyone else
+     * (the same id again is a resumed upload after a reconnect)
+     */
+    private void handleFileOffer(String frame) {
+        String[] parts = frame.substring(FILE_OFFER_PREFIX.length()).split(":", 4);
+        String id = parts[0];
+        try {
+            long size = Long.parseLong(parts[1]);
+            int chunkSize = Integer.parseInt(parts[2]);
+            long maxBytes = EnvConfig.getLong("FILE_MAX_BYTES", 1024L * 1024 * 1024);
+            String reason = null;
+            // The id ends up in receivers' file names - only newSessionId()'s format is accepted
+            if (parts.length != 4 || !AesGcmUtils.isSessionId(id) || size < 0 || chunkSize <= 0 || chunkSize > MAX_FILE_CHUNK) {
+                reason = "invalid offer";
+            } else if (size > maxBytes) {
+                reason = "file is larger than " + maxBytes + " bytes";
+            } else if (!fileOffers.containsKey(id) && fileOffers.size() >= MAX_OPEN_FILE_OFFERS) {
+                reason = "too many files in progress";
+            }
+            if (reason != null) {
+                sendFileFrame(FILE_REJECTED_PREFIX + id + ":" + reason, null);
+                return;
+            }
+            fileOffers.put(id, new FileOffer(size, chunkSize));
+            log.info("[FILE] {} offers {} bytes ({})", username, size, id);
+            server.relayFileFrame(this, frame + ":" + username, null, null);
+        } catch (RuntimeException e) {
+            sendFileFrame(FILE_REJECTED_PREFIX + id + ":invalid offer", null);
+        }
+    }
+
+    /**
+     * "FILE_CHUNK:<id>:<offset>" + byte[] - queue for everyone else, acknowledge once it is queued.
+     * The ack is what lets the sender send more, so a receiver with a full queue holds the
+     * sender back - but this thread moves straight on to the sender's next frame.
+     */
+    private void handleFileChunk(String frame, Object body) {
+        String[] parts = frame.substring(FILE_CHUNK_PREFIX.length()).split(":", 2);
+        FileOffer offer = fileOffers.get(parts[0]);
+        if (offer == null || parts.length != 2 || !(body instanceof byte[] chunk)) {
+            // Unknown upload (e.g. a chunk from before a reconnect) - drop it, the sender resends from its last ack
+            log.debug("[FILE] Dropped chunk for unknown upload from {}", username);
+            return;
+        }
+        long offset;
+        try {
+            offset = Long.parseLong(parts[1]);
+        } catch (NumberFormatException e) {
+            return;
+        }
+        if (offset < 0 || offset >= offer.size || offset % offer.chunkSize != 0
+                || chunk.length > offer.chunkSize + AesGcmUtils.OVERHEAD) {
+            log.warn("[FILE] Invalid chunk from {} dropped", username);
+            return;
+        }
+        if (offer.unacked.get() >= MAX_UNACKED_FILE_CHUNKS) {
+            // Ignoring its window - dropped, so parked chunks cannot pile up in server memory
+            log.warn("[FILE] {} sent too many unacknowledged chunks, chunk dropped", username);
+            return;
+        }
+
+        long end = Math.min(offset + offer.chunkSize, offer.size);
+        String ack = FILE_ACK_PREFIX + parts[0] + ":" + end;
+        offer.unacked.incrementAndGet();
+        server.relayFileFrame(this, frame + ":" + username, chunk, () -> {
+            offer.unacked.decrementAndGet();
+            sendFileFrame(ack, null);
+        });
+
+        if (end == offer.size) {
+            fileOffers.remove(parts[0]);
+            log.info("[FILE] {} finished sending {}", username, parts[0]);
+        }
+    }
+
+    /**
+     * Queue a relayed file frame for this client - see FileRelayQueue
+     * @param queued Run once the frame is queued
+     */
+    void queueFileFrame(String frame, byte[] chunk, Runnable queued) {
+        FileRelayQueue relay = fileRelay;
+        if (relay != null) {
+            relay.offer(frame, chunk, queued);
+        } else if (queued != null) {
+            queued.run();
+        }
+    }
+
+    private static class FileOffer {
+        final long size;
+        final int chunkSize;
+        final AtomicInteger unacked = new AtomicInteger();  // acks run on receivers' relay threads
+
+        FileOffer(long size, int chunkSize) {
+            this.size = size;
+            this.chunkSize = chunkSize;
+        }
+    }
+
+    // The shared chat key: passwords travel AES-encrypted with it (never in plain text), chat messages too
+    private static SecretKey chatKey() {
+        return ChatKey.KEY;
+    }
+
+    // Decoded once, on first use, instead of once per message
+    private static final class ChatKey {
+        static final SecretKey KEY = AesUtils.fromBase64(EnvConfig.getRequired("AES_SECRET_KEY"));
+    }
+
+    /**
+     * Verify a "RESUME:<ticket>:<historyCursor>" frame - MAC and expiry only, no database
+     */
+    private ResumptionTicketService.Session resumeSession(String frame) {
+        String body = frame.substring(RESUME_PREFIX.length());
+        int sep = body.lastIndexOf(':');
+        String ticket = sep >= 0 ? body.substring(0, sep) : body;
+        return server.getTicketService().verify(ticket);
+    }
+
+    private int parseHistoryCursor(String frame) {
+        int sep = frame.lastIndexOf(':');
+        try {
+            return Integer.parseInt(frame.substring(sep + 1));
+        } catch (NumberFormatException e) {
+            return 0;
+        }
+    }
+
     public synchronized void sendMessage(String sender, String message) {
         try {
             if (isConnected && out != null) {
@@ -127,7 +497,43 @@ public class ClientHandler implements Runnable{
                 out.flush();
             }
         } catch (IOException e) {
-            System.err.println("[ERROR] Failed to send message to " + username);
+            log.warn("[ERROR] Failed to send message to {}", username);
+            isConnected = false;
+        }
+    }
+
+    /**
+     * A file frame, and the chunk that goes with it (null for offers/acks).
+     * writeUnshared + reset: the stream must not keep a reference to every chunk it has sent.
+     */
+    public synchronized void sendFileFrame(String frame, byte[] chunk) {
+        try {
+            if (isConnected && out != null) {
+                out.writeObject(frame);
+                if (chunk != null) {
+                    out.writeUnshared(chunk);
+                    out.reset();
+                }
+                out.flush();
+            }
+        } catch (IOException e) {
+            log.warn("[ERROR] Failed to send file data to {}", username);
+            isConnected = false;
+        }
+    }
+
+    /**
+     * "MSG_ACK:<n>" - the sender's first n chat messages on this connection are done with
+     */
+    private synchronized void sendAck() {
+        chatMessages++;
+        try {
+            if (isConnected && out != null) {
+                out.writeObject(MSG_ACK_PREFIX + chatMessages);
+                out.flush();
+            }
+        } catch (IOException e) {
+            log.warn("[ERROR] Failed to acknowledge message from {}", username);
             isConnected = false;
         }
     }
@@ -139,7 +545,7 @@ public class ClientHandler implements Runnable{
                 out.flush();
             }
         } catch (IOException e) {
-            System.err.println("[ERROR] Failed to send history to " + username);
+            log.warn("[ERROR] Failed to send history to {}", username);
         }
     }
 
@@ -150,21 +556,28 @@ public class ClientHandler implements Runnable{
             if (out != null) out.close();
             if (socket != null && !socket.isClosed()) socket.close();
         } catch (IOException e) {
-            System.err.println("[ERROR] Error disconnecting");
+            log.debug("[ERROR] Error disconnecting", e);
         }
     }
 
     private void cleanup() {
         isConnected = false;
+        if (fileRelay != null) {
+            fileRelay.close();
+        }
         try {
             if (in != null) in.close();
             if (out != null) out.close();
             if (socket != null && !socket.isClosed()) socket.close();
         } catch (IOException e) {
-            System.err.println("[ERROR] Error closing resources");
+            log.debug("[ERROR] Error closing resources", e);
         }
 
         server.removeClient(this);
+        if (holdsSlot) {
+            holdsSlot = false;
+            server.releaseSlot();
+        }
     }
 
     public String getUsername() {
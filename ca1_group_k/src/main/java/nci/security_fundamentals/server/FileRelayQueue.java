@@ -0,0 +1,124 @@
+package nci.security_fundamentals.server;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * FileRelayQueue - File frames waiting to be written to one receiver
+ *
+ * PURPOSE: Relaying a chunk used to write it to every receiver's socket on the sender's
+ *          handler thread, so the sender's next chat message waited behind every slow
+ *          receiver. Now the handler only queues the chunk here; a writer thread per
+ *          receiver does the socket write.
+ * USED BY: ClientHandler (one per connection, fed by ChatServer.relayFileFrame)
+ *
+ * BACKPRESSURE: at most "capacity" frames wait for the writer. A frame offered to a full
+ * queue is parked, not refused: it moves into the queue (in order) as soon as the writer
+ * has taken something, and only then is its "queued" callback run. The sender's FILE_ACK
+ * hangs on that callback, so a slow receiver still slows the sender down - without
+ * blocking the thread that reads the sender's chat messages.
+ *
+ * SETTINGS (.env):
+ * - FILE_RELAY_QUEUE  frames queued per receiver before new ones are parked (default 16)
+ */
+class FileRelayQueue {
+
+    private static final class Frame {
+        final String frame;
+        final byte[] chunk;
+        final Runnable queued;   // run once the frame is in the queue (null = nobody waits for it)
+
+        Frame(String frame, byte[] chunk, Runnable queued) {
+            this.frame = frame;
+            this.chunk = chunk;
+            this.queued = queued;
+        }
+    }
+
+    private final ClientHandler receiver;
+    private final int capacity;
+    private final ArrayDeque<Frame> frames = new ArrayDeque<>();   // waiting for the writer
+    private final ArrayDeque<Frame> parked = new ArrayDeque<>();   // waiting for room in frames
+    private Thread writer;       // started with the first frame
+    private boolean closed;
+
+    FileRelayQueue(ClientHandler receiver, int capacity) {
+        this.receiver = receiver;
+        this.capacity = Math.max(1, capacity);
+    }
+
+    /**
+     * Queue a frame (and its chunk) for the receiver; never blocks.
+     * @param queued Run once the frame is queued - right away, or later on the writer thread
+     */
+    void offer(String frame, byte[] chunk, Runnable queued) {
+        synchronized (this) {
+            if (!closed) {
+                Frame entry = new Frame(frame, chunk, queued);
+                if (!parked.isEmpty() || frames.size() >= capacity) {
+                    parked.add(entry);  // behind the frames already parked, so the order holds
+                    return;
+                }
+                frames.add(entry);
+                if (writer == null) {
+                    writer = Thread.ofVirtual().name("file-relay-" + receiver.getUsername()).start(this::writeLoop);
+                }
+                notifyAll();
+            }
+        }
+        // Queued (or the receiver is gone, and there is nothing to wait for)
+        run(queued);
+    }
+
+    private void writeLoop() {
+        while (true) {
+            Frame next;
+            List<Runnable> nowQueued = new ArrayList<>();
+            synchronized (this) {
+                while (frames.isEmpty() && !closed) {
+                    try {
+                        wait();
+                    } catch (InterruptedException e) {
+                        return;
+                    }
+                }
+                if (closed) {
+                    return;
+                }
+                next = frames.poll();
+                // Room again - move parked frames in, oldest first
+                while (!parked.isEmpty() && frames.size() < capacity) {
+                    Frame moved = parked.poll();
+                    frames.add(moved);
+                    nowQueued.add(moved.queued);
+                }
+            }
+            nowQueued.forEach(FileRelayQueue::run);
+            receiver.sendFileFrame(next.frame, next.chunk);
+        }
+    }
+
+    /**
+     * The receiver left: drop what it was still owed, and release everyone waiting on it
+     */
+    void close() {
+        List<Runnable> released = new ArrayList<>();
+        synchronized (this) {
+            closed = true;
+            frames.clear();
+            for (Frame frame : parked) {
+                released.add(frame.queued);
+            }
+            parked.clear();
+            notifyAll();
+        }
+        released.forEach(FileRelayQueue::run);
+    }
+
+    private static void run(Runnable callback) {
+        if (callback != null) {
+            callback.run();
+        }
+    }
+}
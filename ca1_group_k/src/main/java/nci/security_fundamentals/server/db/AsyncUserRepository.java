@@ -0,0 +1,191 @@
+package nci.security_fundamentals.server.db;
+
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Function;
+
+import org.bson.types.ObjectId;
+
+import nci.security_fundamentals.config.EnvConfig;
+import nci.security_fundamentals.server.models.User;
+import nci.security_fundamentals.server.models.UserAuthView;
+
+/**
+ * AsyncUserRepository - CompletableFuture facade over a UserStore
+ *
+ * PURPOSE: Lets callers start several independent lookups at once and combine the
+ *          results, instead of blocking on one query after another.
+ * USED BY: AuthService (registration runs the username and email checks concurrently)
+ *
+ * EXECUTOR (.env, all optional):
+ * - USER_REPO_ASYNC_THREADS     worker threads, i.e. queries in flight    (default 8)
+ * - USER_REPO_ASYNC_QUEUE       queued calls before new ones are refused  (default 1000)
+ * - USER_REPO_ASYNC_TIMEOUT_MS  per-call timeout                          (default 5000)
+ *
+ * FAILURES: every future completes exceptionally instead of throwing -
+ * - the repository's own exception (e.g. MongoWriteException)
+ * - TimeoutException when a call takes longer than the timeout
+ * - RejectedExecutionException when the queue is full (backpressure, nothing is queued)
+ * Use unwrap() to get the original exception from a CompletionException.
+ *
+ * A timed-out call is not interrupted - the driver's own timeouts still bound it -
+ * but the caller stops waiting for it.
+ */
+public class AsyncUserRepository implements AutoCloseable {
+
+    private final UserStore userRepository;
+    private final ThreadPoolExecutor executor;
+    private final long timeoutMs;
+
+    public AsyncUserRepository(UserStore userRepository) {
+        this(userRepository,
+                EnvConfig.getInt("USER_REPO_ASYNC_THREADS", 8),
+                EnvConfig.getInt("USER_REPO_ASYNC_QUEUE", 1000),
+                EnvConfig.getLong("USER_REPO_ASYNC_TIMEOUT_MS", 5000));
+    }
+
+    public AsyncUserRepository(UserStore userRepository, int threads, int queueSize, long timeoutMs) {
+        if (threads <= 0 || queueSize <= 0 || timeoutMs <= 0) {
+            throw new IllegalArgumentException("Invalid async repository settings: threads=" + threads
+                    + " queue=" + queueSize + " timeout=" + timeoutMs + "ms");
+        }
+        this.userRepository = userRepository;
+        this.timeoutMs = timeoutMs;
+
+        AtomicInteger threadNumber = new AtomicInteger();
+        this.executor = new ThreadPoolExecutor(threads, threads, 60, TimeUnit.SECONDS,
+                new ArrayBlockingQueue<>(queueSize),
+                r -> {
+                    Thread t = new Thread(r, "user-repo-async-" + threadNumber.incrementAndGet());
+                    t.setDaemon(true);
+                    return t;
+                },
+                new ThreadPoolExecutor.AbortPolicy());
+        this.executor.allowCoreThreadTimeOut(true);
+    }
+
+    // ------------------ CORE ------------------
+
+    /**
+     * Run any repository call on the executor with the default timeout
+     * e.g. async.submit(repo -> repo.findPage(afterId, 50))
+     */
+    public <T> CompletableFuture<T> submit(Function<UserStore, T> call) {
+        return submit(call, timeoutMs);
+    }
+
+    /**
+     * Run any repository call on the executor with its own timeout
+     */
+    public <T> CompletableFuture<T> submit(Function<UserStore, T> call, long callTimeoutMs) {
+        try {
+            return CompletableFuture.supplyAsync(() -> call.apply(userRepository), executor)
+                    .orTimeout(callTimeoutMs, TimeUnit.MILLISECONDS);
+        } catch (RejectedExecutionException e) {
+            return CompletableFuture.failedFuture(e);
+        }
+    }
+
+    // ------------------ READS ------------------
+
+    public CompletableFuture<User> findById(ObjectId id) {
+        return submit(repo -> repo.findById(id));
+    }
+
+    public CompletableFuture<User> findByUsername(String username) {
+        return submit(repo -> repo.findByUsername(username));
+    }
+
+    public CompletableFuture<User> findByEmail(String email) {
+        return submit(repo -> repo.findByEmail(email));
+    }
+
+    public CompletableFuture<UserAuthView> findAuthViewByUsername(String username) {
+        return submit(repo -> repo.findAuthViewByUsername(username));
+    }
+
+    public CompletableFuture<UserAuthView> findAuthViewById(ObjectId id) {
+        return submit(repo -> repo.findAuthViewById(id));
+    }
+
+    public CompletableFuture<UserAuthView> findLoginView(String username) {
+        return submit(repo -> repo.findLoginView(username));
+    }
+
+    public CompletableFuture<Boolean> usernameExists(String username) {
+        return submit(repo -> repo.usernameExists(username));
+    }
+
+    public CompletableFuture<Boolean> emailExists(String email) {
+        return submit(repo -> repo.emailExists(email));
+    }
+
+    /**
+     * Username and email checks in parallel - one round trip of waiting instead of two
+     *
+     * @return null if both are free, otherwise DUPLICATE_USERNAME / DUPLICATE_EMAIL
+     */
+    public CompletableFuture<String> checkAvailability(String username, String email) {
+        CompletableFuture<Boolean> usernameTaken = usernameExists(username);
+        // No email, nothing to clash with - eq("email", null) would match every user without one
+        CompletableFuture<Boolean> emailTaken = email != null ? emailExists(email) : CompletableFuture.completedFuture(false);
+        return usernameTaken.thenCombine(emailTaken, (nameTaken, mailTaken) -> {
+            if (nameTaken) {
+                return UserStore.DUPLICATE_USERNAME;
+            }
+            return mailTaken ? UserStore.DUPLICATE_EMAIL : null;
+        });
+    }
+
+    // ------------------ WRITES ------------------
+
+    public CompletableFuture<User> createUser(User user) {
+        return submit(repo -> repo.createUser(user));
+    }
+
+    public CompletableFuture<Boolean> updateUser(User user) {
+        return submit(repo -> repo.updateUser(user));
+    }
+
+    public CompletableFuture<Boolean> deactivateUser(ObjectId userId) {
+        return submit(repo -> repo.deactivateUser(userId));
+    }
+
+    // ------------------ HELPERS ------------------
+
+    /**
+     * The exception a repository call actually threw, without CompletionException wrappers
+     */
+    public static Throwable unwrap(Throwable error) {
+        while (error instanceof CompletionException && error.getCause() != null) {
+            error = error.getCause();
+        }
+        return error;
+    }
+
+    public String getStats() {
+        return String.format("active=%d queued=%d completed=%d",
+                executor.getActiveCount(), executor.getQueue().size(), executor.getCompletedTaskCount());
+    }
+
+    /**
+     * Finish queued calls, then stop the worker threads
+     */
+    @Override
+    public void close() {
+        executor.shutdown();
+        try {
+            if (!executor.awaitTermination(timeoutMs, TimeUnit.MILLISECONDS)) {
+                executor.shutdownNow();
+            }
+        } catch (InterruptedException e) {
+            executor.shutdownNow();
+            Thread.currentThread().interrupt();
+        }
+    }
+}
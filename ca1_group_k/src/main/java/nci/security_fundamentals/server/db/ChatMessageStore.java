@@ -0,0 +1,263 @@
+package nci.security_fundamentals.server.db;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Date;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.bson.Document;
+import org.bson.conversions.Bson;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.mongodb.client.MongoCollection;
+import com.mongodb.client.MongoDatabase;
+import com.mongodb.client.model.BulkWriteOptions;
+import com.mongodb.client.model.Filters;
+import com.mongodb.client.model.Indexes;
+import com.mongodb.client.model.Sorts;
+import com.mongodb.client.model.UpdateOneModel;
+import com.mongodb.client.model.UpdateOptions;
+import com.mongodb.client.model.Updates;
+import com.mongodb.client.model.WriteModel;
+
+import nci.security_fundamentals.config.EnvConfig;
+
+/**
+ * ChatMessageStore - Keeps chat history in MongoDB, one document per room per minute
+ *
+ * PURPOSE: History survives a server restart without one insert per message.
+ * USED BY: ChatServer (persist() on every broadcast, loadHistory() at startup)
+ *
+ * DOCUMENT SHAPE (collection "chat_messages"):
+ *   { room: "main", bucketStart: <minute>, count: 3, lastAt: Date,
+ *     messages: [ { sender, body, sentAt }, ... ] }
+ * - body is stored exactly as broadcast (the AES ciphertext), never decrypted here
+ * - A busy minute overflows into another document once the next push would take count
+ *   past CHAT_BUCKET_MAX_MESSAGES, which keeps documents far below the 16 MB limit
+ *
+ * WRITE PIPELINE:
+ * - persist() only offers to a bounded queue - the broadcast thread never waits for MongoDB
+ * - One writer thread drains the queue, groups messages by bucket and sends a single
+ *   bulkWrite of upserts ($push with $each, $inc count) per batch - one upsert per slice of
+ *   at most CHAT_BUCKET_MAX_MESSAGES, ordered only when a minute needed several slices
+ * - A full queue drops the message from persistence (counted in getStats()), it is still broadcast
+ * - close() writes everything still queued
+ *
+ * INDEX: { room: 1, bucketStart: 1 } - history range queries and the upsert filter
+ *
+ * SETTINGS (.env, all optional):
+ * - CHAT_PERSIST_QUEUE         messages waiting to be written   (default 10000)
+ * - CHAT_PERSIST_BATCH         messages per bulkWrite           (default 500)
+ * - CHAT_PERSIST_LINGER_MS     wait for more before writing     (default 200)
+ * - CHAT_BUCKET_MAX_MESSAGES   messages per bucket document     (default 1000)
+ */
+public class ChatMessageStore implements AutoCloseable {
+    private static final Logger log = LoggerFactory.getLogger(ChatMessageStore.class);
+
+    public static final String DEFAULT_ROOM = "main";
+    private static final long BUCKET_MS = 60_000;
+
+    private final MongoCollection<Document> collection;
+    private final BlockingQueue<StoredMessage> queue;
+    private final int batchSize;
+    private final long lingerMs;
+    private final int bucketMaxMessages;
+    private final Thread writer;
+    private volatile boolean running = true;
+
+    private final AtomicLong persisted = new AtomicLong();
+    private final AtomicLong dropped = new AtomicLong();
+    private final AtomicLong failed = new AtomicLong();
+    private final AtomicLong batches = new AtomicLong();
+
+    public ChatMessageStore(MongoDatabase database) {
+        this.collection = database.getCollection("chat_messages");
+        this.collection.createIndex(Indexes.ascending("room", "bucketStart"));
+
+        this.queue = new ArrayBlockingQueue<>(EnvConfig.getInt("CHAT_PERSIST_QUEUE", 10_000));
+        this.batchSize = EnvConfig.getInt("CHAT_PERSIST_BATCH", 500);
+        this.lingerMs = EnvConfig.getLong("CHAT_PERSIST_LINGER_MS", 200);
+        this.bucketMaxMessages = EnvConfig.getInt("CHAT_BUCKET_MAX_MESSAGES", 1000);
+
+        this.writer = new Thread(this::writeLoop, "chat-message-writer");
+        this.writer.setDaemon(true);
+        this.writer.start();
+    }
+
+    // ------------------ WRITING ------------------
+
+    /**
+     * Queue a broadcast message for persistence - never blocks
+     *
+     * @return false if the queue was full and the message will not be stored
+     */
+    public boolean persist(String room, String sender, String body) {
+        if (!running || !queue.offer(new StoredMessage(room, sender, body, new Date()))) {
+            dropped.incrementAndGet();
+            return false;
+        }
+        return true;
+    }
+
+    private void writeLoop() {
+        List<StoredMessage> batch = new ArrayList<>(batchSize);
+        while (running || !queue.isEmpty()) {
+            try {
+                StoredMessage first = queue.poll(lingerMs, TimeUnit.MILLISECONDS);
+                if (first == null) {
+                    continue;
+                }
+                batch.add(first);
+
+                // Linger briefly so a burst becomes one bulkWrite instead of many
+                long deadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(lingerMs);
+                while (batch.size() < batchSize) {
+                    queue.drainTo(batch, batchSize - batch.size());
+                    long remaining = deadline - System.nanoTime();
+                    if (batch.size() >= batchSize || remaining <= 0 || !running) {
+                        break;
+                    }
+                    StoredMessage next = queue.poll(remaining, TimeUnit.NANOSECONDS);
+                    if (next == null) {
+                        break;
+                    }
+                    batch.add(next);
+                }
+                write(batch);
+            } catch (InterruptedException e) {
+                running = false;
+                Thread.currentThread().interrupt();
+                return;
+            } catch (RuntimeException e) {
+                failed.addAndGet(batch.size());
+                log.error("[DB] Failed to persist {} chat messages: {}", batch.size(), e.getMessage());
+            } finally {
+                batch.clear();
+            }
+        }
+    }
+
+    /**
+     * One upsert per bucket touched by the batch, all in a single bulkWrite
+     */
+    private void write(List<StoredMessage> batch) {
+        if (batch.isEmpty()) {
+            return;
+        }
+
+        // room|bucketStart -> messages, in arrival order
+        Map<String, List<StoredMessage>> byBucket = new LinkedHashMap<>();
+        for (StoredMessage message : batch) {
+            byBucket.computeIfAbsent(message.room + "|" + bucketStart(message.sentAt).getTime(), k -> new ArrayList<>())
+                    .add(message);
+        }
+
+        List<WriteModel<Document>> writes = new ArrayList<>(byBucket.size());
+        boolean split = false;
+        for (List<StoredMessage> all : byBucket.values()) {
+            // No single push may take a bucket past the cap, so a busy minute goes in slices
+            split |= all.size() > bucketMaxMessages;
+            for (int from = 0; from < all.size(); from += bucketMaxMessages) {
+                List<StoredMessage> messages = all.subList(from, Math.min(all.size(), from + bucketMaxMessages));
+                StoredMessage first = messages.get(0);
+                Date bucket = bucketStart(first.sentAt);
+
+                List<Document> docs = new ArrayList<>(messages.size());
+                for (StoredMessage message : messages) {
+                    docs.add(new Document("sender", message.sender)
+                            .append("body", message.body)
+                            .append("sentAt", message.sentAt));
+                }
+
+                // Only a bucket with room for the whole slice matches, otherwise the upsert starts a new one
+                Bson filter = Filters.and(
+                        Filters.eq("room", first.room),
+                        Filters.eq("bucketStart", bucket),
+                        Filters.lte("count", bucketMaxMessages - docs.size()));
+                Bson update = Updates.combine(
+                        Updates.pushEach("messages", docs),
+                        Updates.inc("count", docs.size()),
+                        Updates.max("lastAt", messages.get(messages.size() - 1).sentAt));
+                writes.add(new UpdateOneModel<>(filter, update, new UpdateOptions().upsert(true)));
+            }
+        }
+
+        // Slices of one minute must be inserted in order - history is read back sorted by _id
+        collection.bulkWrite(writes, new BulkWriteOptions().ordered(split));
+        persisted.addAndGet(batch.size());
+        batches.incrementAndGet();
+    }
+
+    // ------------------ READING ------------------
+
+    /**
+     * The newest (at most limit) messages of a room sent in [from, to), oldest first,
+     * formatted "sender: body" like ChatServer's in-memory history
+     */
+    public List<String> loadHistory(String room, Date from, Date to, int limit) {
+        List<String> history = new ArrayList<>();
+        // Buckets are keyed by their start minute, so widen the lower bound to the bucket boundary
+        Bson filter = Filters.and(
+                Filters.eq("room", room),
+                Filters.gte("bucketStart", bucketStart(from)),
+                Filters.lt("bucketStart", to));
+
+        // Newest bucket first, so only the buckets holding the last "limit" messages are read
+        for (Document bucket : collection.find(filter).sort(Sorts.descending("bucketStart", "_id"))) {
+            List<Document> messages = bucket.getList("messages", Document.class);
+            for (int i = messages.size() - 1; i >= 0 && history.size() < limit; i--) {
+                Date sentAt = messages.get(i).getDate("sentAt");
+                if (!sentAt.before(from) && sentAt.before(to)) {
+                    history.add(messages.get(i).getString("sender") + ": " + messages.get(i).getString("body"));
+                }
+            }
+            if (history.size() >= limit) {
+                break;
+            }
+        }
+        Collections.reverse(history);
+        return history;
+    }
+
+    private static Date bucketStart(Date time) {
+        return new Date(time.getTime() - Math.floorMod(time.getTime(), BUCKET_MS));
+    }
+
+    // ------------------ LIFECYCLE ------------------
+
+    /**
+     * Stop accepting messages and write everything still queued
+     */
+    @Override
+    public void close() {
+        // Not interrupted - that could abort a bulkWrite half way; the loop sees running=false
+        // within one linger period and drains the queue
+        running = false;
+        try {
+            writer.join(TimeUnit.SECONDS.toMillis(10));
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        if (!queue.isEmpty()) {
+            log.warn("[DB] Chat writer stopped with {} unsaved messages", queue.size());
+        }
+    }
+
+    public String getStats() {
+        return String.format("persisted=%d batches=%d dropped=%d failed=%d queued=%d",
+                persisted.get(), batches.get(), dropped.get(), failed.get(), queue.size());
+    }
+
+    /**
+     * One queued message - sentAt is taken when it is broadcast, not when it is written
+     */
+    private record StoredMessage(String room, String sender, String body, Date sentAt) {
+    }
+}
@@ -0,0 +1,512 @@
+package nci.security_fundamentals.server.db;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.NavigableMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Consumer;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+import org.bson.BsonBinaryReader;
+import org.bson.BsonBinaryWriter;
+import org.bson.codecs.DecoderContext;
+import org.bson.codecs.EncoderContext;
+import org.bson.io.BasicOutputBuffer;
+import org.bson.types.ObjectId;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import nci.security_fundamentals.server.models.User;
+import nci.security_fundamentals.server.models.UserAuthView;
+
+/**
+ * InMemoryUserStore - UserStore kept entirely in this process
+ *
+ * PURPOSE: Run the server (load tests, single-node setups, development) without a
+ *          MongoDB cluster and without any network hop to the store.
+ * SELECTED BY: USER_STORE_BACKEND=memory (see UserStoreFactory)
+ *
+ * INDEXES:
+ * - byId       ConcurrentSkipListMap - sorted by ObjectId, so keyset pages are a tailMap()
+ * - byUsername ConcurrentHashMap     - username -> id, unique
+ * - byEmail    ConcurrentHashMap     - email -> id, unique (users without email are not indexed)
+ *
+ * CONCURRENCY:
+ * - Reads never lock: stored User objects are never changed in place
+ * - Writes take one lock, copy the user, change the copy and swap it in, so the three
+ *   indexes and the uniqueness checks stay consistent
+ * - Callers always get their own copy - changing it does not change the store
+ *
+ * SNAPSHOTS (optional, USER_STORE_SNAPSHOT_PATH):
+ * - Loaded on startup, written every USER_STORE_SNAPSHOT_SECONDS (default 60) when
+ *   something changed, and on close()
+ * - Format: magic + version, then one BSON document per user written by UserCodec
+ *   (the same field layout as user_data in MongoDB)
+ * - Written to a temp file and moved into place, so a crash never leaves half a file
+ * - Anything changed after the last snapshot is lost on a crash
+ */
+public final class InMemoryUserStore implements UserStore {
+    private static final Logger log = LoggerFactory.getLogger(InMemoryUserStore.class);
+
+    private static final int MAGIC = 0x55535253; // "USRS"
+    private static final int VERSION = 1;
+
+    private final NavigableMap<ObjectId, User> byId = new ConcurrentSkipListMap<>();
+    private final Map<String, ObjectId> byUsername = new ConcurrentHashMap<>();
+    private final Map<String, ObjectId> byEmail = new ConcurrentHashMap<>();
+    private final Object writeLock = new Object();
+
+    private final UserCodec codec = new UserCodec();
+    private final Path snapshotPath;                       // null = no snapshots
+    private final ScheduledExecutorService snapshotScheduler;
+    private final AtomicLong modifications = new AtomicLong();
+    private volatile long snapshotModifications;
+
+    /**
+     * Purely in memory - everything is gone when the process ends
+     */
+    public InMemoryUserStore() {
+        this(null, 0);
+    }
+
+    /**
+     * @param snapshotPath     File to load on startup and save to, or null for none
+     * @param snapshotSeconds  How often to save while running (0 = only on close)
+     */
+    public InMemoryUserStore(Path snapshotPath, long snapshotSeconds) {
+        this.snapshotPath = snapshotPath;
+
+        if (snapshotPath != null) {
+            loadSnapshot();
+        }
+
+        if (snapshotPath != null && snapshotSeconds > 0) {
+            this.snapshotScheduler = Executors.newSingleThreadScheduledExecutor(r -> {
+                Thread t = new Thread(r, "user-store-snapshot");
+                t.setDaemon(true);
+                return t;
+            });
+            snapshotScheduler.scheduleWithFixedDelay(this::safeSnapshot, snapshotSeconds, snapshotSeconds, TimeUnit.SECONDS);
+        } else {
+            this.snapshotScheduler = null;
+        }
+    }
+
+    // ------------------ CREATE ------------------
+
+    @Override
+    public User createUser(User user) {
+        synchronized (writeLock) {
+            if (user.getUsername() != null && byUsername.containsKey(user.getUsername())) {
+                throw new IllegalStateException(DUPLICATE_USERNAME);
+            }
+            if (user.getEmail() != null && byEmail.containsKey(user.getEmail())) {
+                throw new IllegalStateException(DUPLICATE_EMAIL);
+            }
+            if (user.getId() == null) {
+                user.setId(new ObjectId());
+            } else if (byId.containsKey(user.getId())) {
+                throw new IllegalStateException("User id already exists: " + user.getId());
+            }
+
+            User stored = copy(user);
+            index(stored);
+            byId.put(stored.getId(), stored);
+            modifications.incrementAndGet();
+        }
+        user.markClean();
+        return user;
+    }
+
+    @Override
+    public Map<Integer, String> createUsers(List<User> users) {
+        Map<Integer, String> failures = new LinkedHashMap<>();
+        for (int i = 0; i < users.size(); i++) {
+            try {
+                createUser(users.get(i));
+            } catch (IllegalStateException e) {
+                failures.put(i, e.getMessage());
+            }
+        }
+        return failures;
+    }
+
+    @Override
+    public List<String> ensureIndexes() {
+        // Hash indexes are always there - nothing to create
+        return new ArrayList<>();
+    }
+
+    // ------------------ READ ------------------
+
+    @Override
+    public User findById(ObjectId id) {
+        return id == null ? null : copy(byId.get(id));
+    }
+
+    @Override
+    public User findByUsername(String username) {
+        return copy(lookup(byUsername, username));
+    }
+
+    @Override
+    public User findByEmail(String email) {
+        return copy(lookup(byEmail, email));
+    }
+
+    @Override
+    public UserAuthView findAuthViewByUsername(String username) {
+        User user = lookup(byUsername, username);
+        return user != null ? new UserAuthView(user, false) : null;
+    }
+
+    @Override
+    public UserAuthView findAuthViewById(ObjectId id) {
+        User user = id == null ? null : byId.get(id);
+        return user != null ? new UserAuthView(user, false) : null;
+    }
+
+    @Override
+    public UserAuthView findLoginView(String username) {
+        User user = lookup(byUsername, username);
+        return user != null ? new UserAuthView(user, true) : null;
+    }
+
+    @Override
+    public List<User> findAll() {
+        return streamAll(0).collect(Collectors.toCollection(ArrayList::new));
+    }
+
+    @Override
+    public List<User> findActiveUsers() {
+        return streamActiveUsers(0).collect(Collectors.toCollection(ArrayList::new));
+    }
+
+    /**
+     * Batch size has no meaning here - the stream walks the id index directly
+     */
+    @Override
+    public Stream<User> streamAll(int batchSize) {
+        return byId.values().stream().map(InMemoryUserStore::copy);
+    }
+
+    @Override
+    public Stream<User> streamActiveUsers(int batchSize) {
+        return byId.values().stream().filter(User::isActive).map(InMemoryUserStore::copy);
+    }
+
+    @Override
+    public List<User> findPage(ObjectId afterId, int limit) {
+        return after(afterId).values().stream().limit(limit).map(InMemoryUserStore::copy).collect(Collectors.toCollection(ArrayList::new));
+    }
+
+    @Override
+    public List<User> findActivePage(ObjectId afterId, int limit) {
+        return after(afterId).values().stream().filter(User::isActive).limit(limit)
+                .map(InMemoryUserStore::copy).collect(Collectors.toCollection(ArrayList::new));
+    }
+
+    @Override
+    public boolean usernameExists(String username) {
+        return username != null && byUsername.containsKey(username);
+    }
+
+    @Override
+    public boolean emailExists(String email) {
+        return email != null && byEmail.containsKey(email);
+    }
+
+    // ------------------ UPDATE ------------------
+
+    /**
+     * Same rules as User_repository.updateUser(): changed fields only, no-op if nothing
+     * changed, OptimisticLockException if the stored version moved on
+     */
+    @Override
+    public boolean updateUser(User user) {
+        if (user.getId() == null || !user.isDirty()) {
+            return false;
+        }
+        Map<String, Object> changes = user.getDirtyValues();
+        boolean updated = modify(user.getId(), stored -> {
+            if (stored.getVersion() != user.getVersion()) {
+                throw new OptimisticLockException(user.getId(), user.getVersion());
+            }
+            changes.forEach((field, value) -> setField(stored, field, value));
+            stored.setVersion(stored.getVersion() + 1);
+        });
+        if (updated) {
+            user.setVersion(user.getVersion() + 1);
+            user.markClean();
+        }
+        return updated;
+    }
+
+    @Override
+    public boolean updateLastLogin(ObjectId userId) {
+        Date now = new Date();
+        return modify(userId, stored -> stored.setLastLogin(now));
+    }
+
+    @Override
+    public int applyFieldUpdates(Map<ObjectId, Map<String, Object>> updates) {
+        int modified = 0;
+        for (Map.Entry<ObjectId, Map<String, Object>> entry : updates.entrySet()) {
+            if (modify(entry.getKey(), stored -> entry.getValue().forEach((field, value) -> setField(stored, field, value)))) {
+                modified++;
+            }
+        }
+        return modified;
+    }
+
+    @Override
+    public boolean deactivateUser(ObjectId userId) {
+        return modify(userId, stored -> {
+            stored.setActive(false);
+            stored.setVersion(stored.getVersion() + 1);
+        });
+    }
+
+    // ------------------ DELETE ------------------
+
+    @Override
+    public boolean deleteUser(ObjectId userId) {
+        synchronized (writeLock) {
+            User removed = byId.remove(userId);
+            if (removed == null) {
+                return false;
+            }
+            unindex(removed);
+            modifications.incrementAndGet();
+            return true;
+        }
+    }
+
+    // ------------------ HELPERS ------------------
+
+    /**
+     * Copy, change, re-check uniqueness, swap in - readers see either the old or the new user
+     */
+    private boolean modify(ObjectId id, Consumer<User> change) {
+        if (id == null) {
+            return false;
+        }
+        synchronized (writeLock) {
+            User current = byId.get(id);
+            if (current == null) {
+                return false;
+            }
+            User updated = copy(current);
+            change.accept(updated);
+
+            ObjectId usernameOwner = updated.getUsername() == null ? null : byUsername.get(updated.getUsername());
+            if (usernameOwner != null && !usernameOwner.equals(id)) {
+                throw new IllegalStateException(DUPLICATE_USERNAME);
+            }
+            ObjectId emailOwner = updated.getEmail() == null ? null : byEmail.get(updated.getEmail());
+            if (emailOwner != null && !emailOwner.equals(id)) {
+                throw new IllegalStateException(DUPLICATE_EMAIL);
+            }
+
+            // Swap the user first, then move only the index keys that changed -
+            // an unchanged username stays findable throughout
+            byId.put(id, updated);
+            reindex(current.getUsername(), updated.getUsername(), byUsername, id);
+            reindex(current.getEmail(), updated.getEmail(), byEmail, id);
+            modifications.incrementAndGet();
+            return true;
+        }
+    }
+
+    /**
+     * Field names as in user_data, the same ones User_repository.applyFieldUpdates() would $set
+     */
+    private static void setField(User user, String field, Object value) {
+        switch (field) {
+            case "username" -> user.setUsername((String) value);
+            case "email" -> user.setEmail((String) value);
+            case "passwordHash" -> user.setPasswordHash((String) value);
+            case "imagePasswordHash" -> user.setImagePasswordHash((String) value);
+            case "createdAt" -> user.setCreatedAt((Date) value);
+            case "lastLogin" -> user.setLastLogin((Date) value);
+            case "isActive" -> user.setActive((Boolean) value);
+            default -> throw new IllegalArgumentException("Unknown user field: " + field);
+        }
+    }
+
+    private void index(User user) {
+        if (user.getUsername() != null) {
+            byUsername.put(user.getUsername(), user.getId());
+        }
+        if (user.getEmail() != null) {
+            byEmail.put(user.getEmail(), user.getId());
+        }
+    }
+
+    private void unindex(User user) {
+        if (user.getUsername() != null) {
+            byUsername.remove(user.getUsername(), user.getId());
+        }
+        if (user.getEmail() != null) {
+            byEmail.remove(user.getEmail(), user.getId());
+        }
+    }
+
+    private static void reindex(String oldKey, String newKey, Map<String, ObjectId> index, ObjectId id) {
+        if (oldKey != null && oldKey.equals(newKey)) {
+            return;
+        }
+        if (newKey != null) {
+            index.put(newKey, id);
+        }
+        if (oldKey != null) {
+            index.remove(oldKey, id);
+        }
+    }
+
+    private User lookup(Map<String, ObjectId> index, String key) {
+        ObjectId id = key == null ? null : index.get(key);
+        return id == null ? null : byId.get(id);
+    }
+
+    private NavigableMap<ObjectId, User> after(ObjectId afterId) {
+        return afterId == null ? byId : byId.tailMap(afterId, false);
+    }
+
+    private static User copy(User user) {
+        if (user == null) {
+            return null;
+        }
+        User copy = new User(user.getUsername(), user.getEmail(), user.getPasswordHash());
+        copy.setId(user.getId());
+        copy.setImagePasswordHash(user.getImagePasswordHash());
+        copy.setCreatedAt(user.getCreatedAt());
+        copy.setLastLogin(user.getLastLogin());
+        copy.setActive(user.isActive());
+        copy.setVersion(user.getVersion());
+        copy.markClean();
+        return copy;
+    }
+
+    // ------------------ SNAPSHOTS ------------------
+
+    /**
+     * Write every user to the snapshot file (no-op without a snapshot path)
+     */
+    public void snapshot() throws IOException {
+        if (snapshotPath == null) {
+            return;
+        }
+        long version = modifications.get();
+        Path tmp = snapshotPath.resolveSibling(snapshotPath.getFileName() + ".tmp");
+
+        BasicOutputBuffer buffer = new BasicOutputBuffer();
+        int count = 0;
+        try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(tmp)))) {
+            out.writeInt(MAGIC);
+            out.writeInt(VERSION);
+            for (User user : byId.values()) {
+                buffer.truncateToPosition(0);
+                try (BsonBinaryWriter writer = new BsonBinaryWriter(buffer)) {
+                    codec.encode(writer, user, EncoderContext.builder().build());
+                }
+                buffer.pipe(out);
+                count++;
+            }
+        }
+        Files.move(tmp, snapshotPath, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        snapshotModifications = version;
+        log.debug("[DB] User snapshot written: {} users to {}", count, snapshotPath);
+    }
+
+    private void safeSnapshot() {
+        if (modifications.get() == snapshotModifications) {
+            return; // nothing changed since the last snapshot
+        }
+        try {
+            snapshot();
+        } catch (IOException e) {
+            log.error("[DB] User snapshot failed: {}", e.getMessage());
+        }
+    }
+
+    private void loadSnapshot() {
+        if (!Files.exists(snapshotPath)) {
+            return;
+        }
+        int count = 0;
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(Files.newInputStream(snapshotPath)))) {
+            if (in.readInt() != MAGIC || in.readInt() != VERSION) {
+                throw new IOException("Not a user snapshot file");
+            }
+            byte[] lengthBytes = new byte[4];
+            while (true) {
+                try {
+                    in.readFully(lengthBytes);
+                } catch (EOFException end) {
+                    break;
+                }
+                // BSON documents start with their own little-endian total length
+                int length = ByteBuffer.wrap(lengthBytes).order(ByteOrder.LITTLE_ENDIAN).getInt();
+                if (length < 5) {
+                    throw new IOException("Corrupt user snapshot record");
+                }
+                byte[] document = new byte[length];
+                System.arraycopy(lengthBytes, 0, document, 0, 4);
+                in.readFully(document, 4, length - 4);
+
+                User user;
+                try (BsonBinaryReader reader = new BsonBinaryReader(ByteBuffer.wrap(document))) {
+                    user = codec.decode(reader, DecoderContext.builder().build());
+                }
+                index(user);
+                byId.put(user.getId(), user);
+                count++;
+            }
+            log.info("[DB] Loaded {} users from {}", count, snapshotPath);
+        } catch (IOException | RuntimeException e) {
+            // Start empty rather than half-loaded
+            byId.clear();
+            byUsername.clear();
+            byEmail.clear();
+            log.warn("[DB] Ignoring unreadable user snapshot {}: {}", snapshotPath, e.getMessage());
+        }
+        snapshotModifications = modifications.get();
+    }
+
+    /**
+     * Stop the snapshot timer and save a final snapshot if anything changed
+     */
+    @Override
+    public void close() {
+        if (snapshotScheduler != null) {
+            snapshotScheduler.shutdown();
+            try {
+                snapshotScheduler.awaitTermination(5, TimeUnit.SECONDS);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }
+        safeSnapshot();
+    }
+}
@@ -0,0 +1,185 @@
+package nci.security_fundamentals.server.db;
+
+import java.util.List;
+import java.util.Map;
+import java.util.function.Supplier;
+import java.util.stream.Stream;
+
+import org.bson.types.ObjectId;
+
+import nci.security_fundamentals.metrics.OperationStats;
+import nci.security_fundamentals.server.models.User;
+import nci.security_fundamentals.server.models.UserAuthView;
+
+/**
+ * InstrumentedUserStore - Times every call to another UserStore
+ *
+ * PURPOSE: Per-method latency histograms, error counts and a slow-call log for the user
+ *          store, so a slow handshake can be pinned on the database or on the server.
+ * CREATED BY: UserStoreFactory, around whichever backend is configured
+ *
+ * WHAT IS MEASURED: the whole call as AuthService sees it - for MongoDB that is pool
+ * wait + network + server time + decoding. MongoCommandMetrics measures the commands
+ * themselves, so the difference between the two is time spent in the driver/pool.
+ *
+ * Streams are timed until the stream is returned, not while it is consumed.
+ *
+ * SETTINGS (.env): USER_STORE_SLOW_MS - slow-call threshold (default 100, 0 = off)
+ */
+public class InstrumentedUserStore implements UserStore {
+
+    private final UserStore delegate;
+    private final OperationStats stats;
+
+    public InstrumentedUserStore(UserStore delegate, long slowThresholdMs) {
+        this.delegate = delegate;
+        this.stats = new OperationStats("user store", slowThresholdMs);
+    }
+
+    public OperationStats getStats() {
+        return stats;
+    }
+
+    public UserStore getDelegate() {
+        return delegate;
+    }
+
+    private <T> T time(String operation, String detail, Supplier<T> call) {
+        long start = System.nanoTime();
+        boolean failed = true;
+        try {
+            T result = call.get();
+            failed = false;
+            return result;
+        } finally {
+            stats.record(operation, System.nanoTime() - start, failed, detail);
+        }
+    }
+
+    private static String id(ObjectId id) {
+        return id != null ? id.toHexString() : null;
+    }
+
+    // ------------------ CREATE ------------------
+
+    @Override
+    public User createUser(User user) {
+        return time("createUser", user.getUsername(), () -> delegate.createUser(user));
+    }
+
+    @Override
+    public Map<Integer, String> createUsers(List<User> users) {
+        return time("createUsers", users.size() + " users", () -> delegate.createUsers(users));
+    }
+
+    @Override
+    public List<String> ensureIndexes() {
+        return time("ensureIndexes", null, delegate::ensureIndexes);
+    }
+
+    // ------------------ READ ------------------
+
+    @Override
+    public User findById(ObjectId id) {
+        return time("findById", id(id), () -> delegate.findById(id));
+    }
+
+    @Override
+    public User findByUsername(String username) {
+        return time("findByUsername", username, () -> delegate.findByUsername(username));
+    }
+
+    @Override
+    public User findByEmail(String email) {
+        return time("findByEmail", null, () -> delegate.findByEmail(email));
+    }
+
+    @Override
+    public UserAuthView findAuthViewByUsername(String username) {
+        return time("findAuthViewByUsername", username, () -> delegate.findAuthViewByUsername(username));
+    }
+
+    @Override
+    public UserAuthView findAuthViewById(ObjectId id) {
+        return time("findAuthViewById", id(id), () -> delegate.findAuthViewById(id));
+    }
+
+    @Override
+    public UserAuthView findLoginView(String username) {
+        return time("findLoginView", username, () -> delegate.findLoginView(username));
+    }
+
+    @Override
+    public List<User> findAll() {
+        return time("findAll", null, delegate::findAll);
+    }
+
+    @Override
+    public List<User> findActiveUsers() {
+        return time("findActiveUsers", null, delegate::findActiveUsers);
+    }
+
+    @Override
+    public Stream<User> streamAll(int batchSize) {
+        return time("streamAll", null, () -> delegate.streamAll(batchSize));
+    }
+
+    @Override
+    public Stream<User> streamActiveUsers(int batchSize) {
+        return time("streamActiveUsers", null, () -> delegate.streamActiveUsers(batchSize));
+    }
+
+    @Override
+    public List<User> findPage(ObjectId afterId, int limit) {
+        return time("findPage", null, () -> delegate.findPage(afterId, limit));
+    }
+
+    @Override
+    public List<User> findActivePage(ObjectId afterId, int limit) {
+        return time("findActivePage", null, () -> delegate.findActivePage(afterId, limit));
+    }
+
+    @Override
+    public boolean usernameExists(String username) {
+        return time("usernameExists", username, () -> delegate.usernameExists(username));
+    }
+
+    @Override
+    public boolean emailExists(String email) {
+        return time("emailExists", null, () -> delegate.emailExists(email));
+    }
+
+    // ------------------ UPDATE ------------------
+
+    @Override
+    public boolean updateUser(User user) {
+        return time("updateUser", id(user.getId()), () -> delegate.updateUser(user));
+    }
+
+    @Override
+    public boolean updateLastLogin(ObjectId userId) {
+        return time("updateLastLogin", id(userId), () -> delegate.updateLastLogin(userId));
+    }
+
+    @Override
+    public int applyFieldUpdates(Map<ObjectId, Map<String, Object>> updates) {
+        return time("applyFieldUpdates", updates.size() + " users", () -> delegate.applyFieldUpdates(updates));
+    }
+
+    @Override
+    public boolean deactivateUser(ObjectId userId) {
+        return time("deactivateUser", id(userId), () -> delegate.deactivateUser(userId));
+    }
+
+    // ------------------ DELETE ------------------
+
+    @Override
+    public boolean deleteUser(ObjectId userId) {
+        return time("deleteUser", id(userId), () -> delegate.deleteUser(userId));
+    }
+
+    @Override
+    public void close() {
+        delegate.close();
+    }
+}
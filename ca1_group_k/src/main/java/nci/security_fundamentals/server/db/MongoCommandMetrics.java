@@ -0,0 +1,62 @@
+package nci.security_fundamentals.server.db;
+
+import java.util.concurrent.TimeUnit;
+
+import com.mongodb.event.CommandFailedEvent;
+import com.mongodb.event.CommandListener;
+import com.mongodb.event.CommandSucceededEvent;
+
+import nci.security_fundamentals.metrics.OperationStats;
+
+/**
+ * MongoCommandMetrics - Driver-level timing of every MongoDB command
+ *
+ * PURPOSE: How long MongoDB itself (network + server) takes per command type, as
+ *          reported by the driver - independent of which class sent the command.
+ * REGISTERED BY: MongoConnectionManager on the shared client
+ *
+ * Keyed by command name (find, insert, update, delete, aggregate, getMore, ...).
+ * The slow log names the database only - never the command body,
+ * which may contain password hashes.
+ *
+ * SETTINGS (.env): MONGODB_SLOW_COMMAND_MS - slow-command threshold (default 100, 0 = off)
+ */
+public class MongoCommandMetrics implements CommandListener {
+
+    // Handshake and monitoring commands would only add noise
+    private static final String[] IGNORED = {"hello", "isMaster", "ismaster", "ping", "saslStart", "saslContinue", "endSessions"};
+
+    private final OperationStats stats;
+
+    public MongoCommandMetrics(long slowThresholdMs) {
+        this.stats = new OperationStats("MongoDB command", slowThresholdMs);
+    }
+
+    public OperationStats getStats() {
+        return stats;
+    }
+
+    @Override
+    public void commandSucceeded(CommandSucceededEvent event) {
+        if (!ignored(event.getCommandName())) {
+            stats.record(event.getCommandName(), event.getElapsedTime(TimeUnit.NANOSECONDS), false, event.getDatabaseName());
+        }
+    }
+
+    @Override
+    public void commandFailed(CommandFailedEvent event) {
+        if (!ignored(event.getCommandName())) {
+            stats.record(event.getCommandName(), event.getElapsedTime(TimeUnit.NANOSECONDS), true,
+                    event.getDatabaseName() + ": " + event.getThrowable().getMessage());
+        }
+    }
+
+    private static boolean ignored(String commandName) {
+        for (String ignored : IGNORED) {
+            if (ignored.equals(commandName)) {
+                return true;
+            }
+        }
+        return false;
+    }
+}
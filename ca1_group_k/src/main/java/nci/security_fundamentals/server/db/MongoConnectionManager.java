@@ -0,0 +1,209 @@
+package nci.security_fundamentals.server.db;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+import com.mongodb.ConnectionString;
+import com.mongodb.MongoClientSettings;
+import com.mongodb.client.MongoClient;
+import com.mongodb.client.MongoClients;
+import com.mongodb.client.MongoDatabase;
+import com.mongodb.event.ConnectionCheckOutFailedEvent;
+import com.mongodb.event.ConnectionCheckOutStartedEvent;
+import com.mongodb.event.ConnectionCheckedInEvent;
+import com.mongodb.event.ConnectionCheckedOutEvent;
+import com.mongodb.event.ConnectionClosedEvent;
+import com.mongodb.event.ConnectionCreatedEvent;
+import com.mongodb.event.ConnectionPoolListener;
+
+import nci.security_fundamentals.config.EnvConfig;
+
+/**
+ * MongoConnectionManager - The one MongoClient (and connection pool) per process
+ *
+ * PURPOSE: Everything that needs MongoDB asks this class for the database instead of
+ *          calling MongoClients.create() itself, so a process has exactly one driver pool.
+ * USED BY: ChatServer, LoginHandler, BulkUserImporter
+ *
+ * POOL SETTINGS (.env, all optional):
+ * - MONGODB_POOL_MAX_SIZE        max connections in the pool            (default 100)
+ * - MONGODB_POOL_MIN_SIZE        connections kept open when idle        (default 0)
+ * - MONGODB_POOL_MAX_WAIT_MS     how long a caller waits for a free one (default 2000)
+ * - MONGODB_CONNECT_TIMEOUT_MS   TCP connect timeout                    (default 10000)
+ * - MONGODB_SOCKET_TIMEOUT_MS    read timeout, 0 = none                 (default 0)
+ * - MONGODB_POOL_MAX_IDLE_MS     idle connections closed after this     (default 60000)
+ *
+ * LIFECYCLE:
+ * - Created lazily on the first getInstance()
+ * - close() shuts the pool down; the next getInstance() creates a new one
+ *
+ * METRICS:
+ * - getPoolMetrics()    - checked-out connections, waiting callers and wait times
+ * - getCommandMetrics() - latency per command type (MONGODB_SLOW_COMMAND_MS, default 100)
+ */
+public class MongoConnectionManager implements AutoCloseable {
+
+    private static MongoConnectionManager instance;
+
+    private final MongoClient mongoClient;
+    private final String databaseName;
+    private final PoolMetrics poolMetrics;
+    private final MongoCommandMetrics commandMetrics;
+
+    private MongoConnectionManager() {
+        String connectionString = EnvConfig.getRequired("MONGODB_CONNECTION_STRING");
+        this.databaseName = EnvConfig.getRequired("MONGODB_DATABASE_NAME");
+        this.poolMetrics = new PoolMetrics();
+        this.commandMetrics = new MongoCommandMetrics(EnvConfig.getLong("MONGODB_SLOW_COMMAND_MS", 100));
+
+        int maxSize = EnvConfig.getInt("MONGODB_POOL_MAX_SIZE", 100);
+        int minSize = EnvConfig.getInt("MONGODB_POOL_MIN_SIZE", 0);
+        long maxWaitMs = EnvConfig.getLong("MONGODB_POOL_MAX_WAIT_MS", 2000);
+        long connectTimeoutMs = EnvConfig.getLong("MONGODB_CONNECT_TIMEOUT_MS", 10_000);
+        long socketTimeoutMs = EnvConfig.getLong("MONGODB_SOCKET_TIMEOUT_MS", 0);
+        long maxIdleMs = EnvConfig.getLong("MONGODB_POOL_MAX_IDLE_MS", 60_000);
+
+        MongoClientSettings settings = MongoClientSettings.builder()
+                .applyConnectionString(new ConnectionString(connectionString))
+                .addCommandListener(commandMetrics)
+                .applyToConnectionPoolSettings(pool -> pool
+                        .maxSize(maxSize)
+                        .minSize(minSize)
+                        .maxWaitTime(maxWaitMs, TimeUnit.MILLISECONDS)
+                        .maxConnectionIdleTime(maxIdleMs, TimeUnit.MILLISECONDS)
+                        // Evict idle connections well within the idle limit
+                        .maintenanceFrequency(Math.max(1000, maxIdleMs / 2), TimeUnit.MILLISECONDS)
+                        .addConnectionPoolListener(poolMetrics))
+                .applyToSocketSettings(socket -> socket
+                        .connectTimeout(connectTimeoutMs, TimeUnit.MILLISECONDS)
+                        .readTimeout(socketTimeoutMs, TimeUnit.MILLISECONDS))
+                .build();
+
+        this.mongoClient = MongoClients.create(settings);
+    }
+
+    /**
+     * Get the shared manager, creating the client on first use
+     */
+    public static synchronized MongoConnectionManager getInstance() {
+        if (instance == null) {
+            instance = new MongoConnectionManager();
+        }
+        return instance;
+    }
+
+    /**
+     * The application database (MONGODB_DATABASE_NAME) on the shared client
+     */
+    public MongoDatabase getDatabase() {
+        return mongoClient.getDatabase(databaseName);
+    }
+
+    public MongoClient getClient() {
+        return mongoClient;
+    }
+
+    public PoolMetrics getPoolMetrics() {
+        return poolMetrics;
+    }
+
+    public MongoCommandMetrics getCommandMetrics() {
+        return commandMetrics;
+    }
+
+    /**
+     * Close the shared client and every pooled connection
+     * Call once at shutdown - afterwards getInstance() starts a fresh client.
+     */
+    @Override
+    public void close() {
+        synchronized (MongoConnectionManager.class) {
+            if (instance == this) {
+                instance = null;
+            }
+        }
+        mongoClient.close();
+    }
+
+    /**
+     * PoolMetrics - Live connection pool counters fed by driver events
+     *
+     * - checkedOut:  connections currently in use
+     * - waiters:     callers currently waiting for a connection
+     * - open:        connections currently open (in use + idle)
+     * - wait time:   total / max time callers spent waiting for a connection
+     * - failures:    check-outs that timed out or failed
+     */
+    public static class PoolMetrics implements ConnectionPoolListener {
+        private final AtomicInteger checkedOut = new AtomicInteger();
+        private final AtomicInteger waiters = new AtomicInteger();
+        private final AtomicInteger open = new AtomicInteger();
+        private final AtomicLong checkOuts = new AtomicLong();
+        private final AtomicLong checkOutFailures = new AtomicLong();
+        private final AtomicLong totalWaitNanos = new AtomicLong();
+        private final AtomicLong maxWaitNanos = new AtomicLong();
+
+        @Override
+        public void connectionCheckOutStarted(ConnectionCheckOutStartedEvent event) {
+            waiters.incrementAndGet();
+        }
+
+        @Override
+        public void connectionCheckedOut(ConnectionCheckedOutEvent event) {
+            waiters.decrementAndGet();
+            checkedOut.incrementAndGet();
+            checkOuts.incrementAndGet();
+            recordWait(event.getElapsedTime(TimeUnit.NANOSECONDS));
+        }
+
+        @Override
+        public void connectionCheckOutFailed(ConnectionCheckOutFailedEvent event) {
+            waiters.decrementAndGet();
+            checkOutFailures.incrementAndGet();
+            recordWait(event.getElapsedTime(TimeUnit.NANOSECONDS));
+        }
+
+        @Override
+        public void connectionCheckedIn(ConnectionCheckedInEvent event) {
+            checkedOut.decrementAndGet();
+        }
+
+        @Override
+        public void connectionCreated(ConnectionCreatedEvent event) {
+            open.incrementAndGet();
+        }
+
+        @Override
+        public void connectionClosed(ConnectionClosedEvent event) {
+            open.decrementAndGet();
+        }
+
+        private void recordWait(long nanos) {
+            totalWaitNanos.addAndGet(nanos);
+            maxWaitNanos.accumulateAndGet(nanos, Math::max);
+        }
+
+        public int getCheckedOut() { return checkedOut.get(); }
+        public int getWaiters() { return waiters.get(); }
+        public int getOpenConnections() { return open.get(); }
+        public long getCheckOutCount() { return checkOuts.get(); }
+        public long getCheckOutFailures() { return checkOutFailures.get(); }
+
+        public double getAverageWaitMillis() {
+            long count = checkOuts.get() + checkOutFailures.get();
+            return count == 0 ? 0 : totalWaitNanos.get() / 1_000_000.0 / count;
+        }
+
+        public double getMaxWaitMillis() {
+            return maxWaitNanos.get() / 1_000_000.0;
+        }
+
+        @Override
+        public String toString() {
+            return String.format("open=%d checkedOut=%d waiters=%d checkOuts=%d failures=%d avgWait=%.2fms maxWait=%.2fms",
+                    getOpenConnections(), getCheckedOut(), getWaiters(), getCheckOutCount(),
+                    getCheckOutFailures(), getAverageWaitMillis(), getMaxWaitMillis());
+        }
+    }
+}
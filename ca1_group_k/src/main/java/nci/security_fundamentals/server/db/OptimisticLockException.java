@@ -0,0 +1,34 @@
+package nci.security_fundamentals.server.db;
+
+import org.bson.types.ObjectId;
+
+/**
+ * OptimisticLockException - A user was saved from a copy that is no longer current
+ *
+ * PURPOSE: UserStore.updateUser() only writes if the stored version is still the one the
+ *          copy was loaded with. When someone else saved in between, the update is refused
+ *          with this - reload the user, reapply the change and save again.
+ * USED BY: User_repository, InMemoryUserStore (thrown from updateUser())
+ */
+public class OptimisticLockException extends RuntimeException {
+
+    private final ObjectId userId;
+    private final long expectedVersion;
+
+    public OptimisticLockException(ObjectId userId, long expectedVersion) {
+        super("User " + userId + " was updated by someone else since version " + expectedVersion);
+        this.userId = userId;
+        this.expectedVersion = expectedVersion;
+    }
+
+    public ObjectId getUserId() {
+        return userId;
+    }
+
+    /**
+     * The version the rejected copy was loaded with
+     */
+    public long getExpectedVersion() {
+        return expectedVersion;
+    }
+}
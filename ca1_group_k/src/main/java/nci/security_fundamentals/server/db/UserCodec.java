@@ -0,0 +1,137 @@
+package nci.security_fundamentals.server.db;
+
+import java.util.Date;
+
+import org.bson.BsonObjectId;
+import org.bson.BsonReader;
+import org.bson.BsonType;
+import org.bson.BsonValue;
+import org.bson.BsonWriter;
+import org.bson.codecs.CollectibleCodec;
+import org.bson.codecs.DecoderContext;
+import org.bson.codecs.EncoderContext;
+import org.bson.types.ObjectId;
+
+import nci.security_fundamentals.server.models.User;
+
+/**
+ * UserCodec - Reads and writes User objects straight from/to BSON
+ *
+ * WHY: Without it every read builds an org.bson.Document (a LinkedHashMap of boxed
+ *      values) and then User(Document) copies each field out of it; every write
+ *      builds a Document in User.toDocument(). The codec streams fields directly
+ *      between the BSON reader/writer and the User object - no intermediate map.
+ *
+ * USED BY: User_repository, registered in the database's CodecRegistry so the
+ *          collection can be typed as MongoCollection<User>.
+ *
+ * FIELD NAMES: identical to User.toDocument(), so documents written either way
+ *              are interchangeable. Unknown fields are skipped on read; a missing
+ *              version (documents from before versioning) reads as 0.
+ *
+ * COLLECTIBLE: generates the ObjectId on insert and sets it on the User, the same
+ *              way the driver fills in _id for a Document.
+ */
+public class UserCodec implements CollectibleCodec<User> {
+
+    @Override
+    public void encode(BsonWriter writer, User user, EncoderContext encoderContext) {
+        writer.writeStartDocument();
+
+        // Only include _id if it exists (generateIdIfAbsentFromDocument runs first on insert)
+        if (user.getId() != null) {
+            writer.writeObjectId("_id", user.getId());
+        }
+        writeString(writer, "username", user.getUsername());
+        writeString(writer, "email", user.getEmail());
+        writeString(writer, "passwordHash", user.getPasswordHash());
+        writeString(writer, "imagePasswordHash", user.getImagePasswordHash());
+        writeDate(writer, "createdAt", user.getCreatedAt());
+        writeDate(writer, "lastLogin", user.getLastLogin());
+        writer.writeBoolean("isActive", user.isActive());
+        writer.writeInt64("version", user.getVersion());
+
+        writer.writeEndDocument();
+    }
+
+    @Override
+    public User decode(BsonReader reader, DecoderContext decoderContext) {
+        User user = new User();
+        // Match User(Document): missing dates stay null, missing isActive means active
+        user.setCreatedAt(null);
+        user.setActive(true);
+
+        reader.readStartDocument();
+        while (reader.readBsonType() != BsonType.END_OF_DOCUMENT) {
+            String name = reader.readName();
+            if (reader.getCurrentBsonType() == BsonType.NULL) {
+                reader.readNull();
+                continue;
+            }
+            switch (name) {
+                case "_id" -> user.setId(reader.readObjectId());
+                case "username" -> user.setUsername(reader.readString());
+                case "email" -> user.setEmail(reader.readString());
+                case "passwordHash" -> user.setPasswordHash(reader.readString());
+                case "imagePasswordHash" -> user.setImagePasswordHash(reader.readString());
+                case "createdAt" -> user.setCreatedAt(new Date(reader.readDateTime()));
+                case "lastLogin" -> user.setLastLogin(new Date(reader.readDateTime()));
+                case "isActive" -> user.setActive(reader.readBoolean());
+                case "version" -> user.setVersion(reader.getCurrentBsonType() == BsonType.INT32
+                        ? reader.readInt32() : reader.readInt64());
+                default -> reader.skipValue();
+            }
+        }
+        reader.readEndDocument();
+
+        // Setters above recorded every field as changed - a freshly loaded user has no changes
+        user.markClean();
+        return user;
+    }
+
+    @Override
+    public Class<User> getEncoderClass() {
+        return User.class;
+    }
+
+    // ------------------ CollectibleCodec (_id handling) ------------------
+
+    @Override
+    public User generateIdIfAbsentFromDocument(User user) {
+        if (user.getId() == null) {
+            user.setId(new ObjectId());
+        }
+        return user;
+    }
+
+    @Override
+    public boolean documentHasId(User user) {
+        return user.getId() != null;
+    }
+
+    @Override
+    public BsonValue getDocumentId(User user) {
+        if (user.getId() == null) {
+            throw new IllegalStateException("User has no _id");
+        }
+        return new BsonObjectId(user.getId());
+    }
+
+    // ------------------ HELPERS ------------------
+
+    private static void writeString(BsonWriter writer, String name, String value) {
+        if (value == null) {
+            writer.writeNull(name);
+        } else {
+            writer.writeString(name, value);
+        }
+    }
+
+    private static void writeDate(BsonWriter writer, String name, Date value) {
+        if (value == null) {
+            writer.writeNull(name);
+        } else {
+            writer.writeDateTime(name, value.getTime());
+        }
+    }
+}
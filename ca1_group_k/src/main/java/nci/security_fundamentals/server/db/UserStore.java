@@ -0,0 +1,121 @@
+package nci.security_fundamentals.server.db;
+
+import java.util.List;
+import java.util.Map;
+import java.util.stream.Stream;
+
+import org.bson.types.ObjectId;
+
+import nci.security_fundamentals.server.models.User;
+import nci.security_fundamentals.server.models.UserAuthView;
+
+/**
+ * UserStore - Where user accounts live, independent of the database behind it
+ *
+ * PURPOSE: AuthService and the other callers only talk to this interface, so the
+ *          storage backend can be swapped by configuration.
+ *
+ * BACKENDS (picked by UserStoreFactory from USER_STORE_BACKEND):
+ * - User_repository   "mongo"  (default) - MongoDB user_data collection
+ * - InMemoryUserStore "memory"           - concurrent hash indexes in this process,
+ *                                          optionally snapshotted to disk
+ *
+ * CONTRACT (both backends):
+ * - username and email are unique; a duplicate createUser() throws, createUsers()
+ *   reports it as DUPLICATE_USERNAME / DUPLICATE_EMAIL
+ * - find...() methods return null when nothing matches
+ * - pages and streams are ordered by id
+ * - streams must be closed (try-with-resources)
+ */
+public interface UserStore extends AutoCloseable {
+
+    String DUPLICATE_USERNAME = "Username already exists";
+    String DUPLICATE_EMAIL = "Email already exists";
+
+    // CREATE
+
+    /**
+     * Save a new user
+     * @return The saved user with its generated id
+     */
+    User createUser(User user);
+
+    /**
+     * Save many new users, continuing past duplicates
+     * @return Position in the list -> error message, for every user that was NOT saved
+     */
+    Map<Integer, String> createUsers(List<User> users);
+
+    /**
+     * Make sure lookups are indexed
+     * @return One line per problem found; empty if everything is in place
+     */
+    List<String> ensureIndexes();
+
+    // READ
+
+    User findById(ObjectId id);
+
+    User findByUsername(String username);
+
+    User findByEmail(String email);
+
+    UserAuthView findAuthViewByUsername(String username);
+
+    UserAuthView findAuthViewById(ObjectId id);
+
+    /**
+     * Auth view including the email (the JWT carries it)
+     */
+    UserAuthView findLoginView(String username);
+
+    List<User> findAll();
+
+    List<User> findActiveUsers();
+
+    Stream<User> streamAll(int batchSize);
+
+    Stream<User> streamActiveUsers(int batchSize);
+
+    /**
+     * Keyset pagination: up to limit users with an id greater than afterId (null = first page)
+     */
+    List<User> findPage(ObjectId afterId, int limit);
+
+    List<User> findActivePage(ObjectId afterId, int limit);
+
+    boolean usernameExists(String username);
+
+    boolean emailExists(String email);
+
+    // UPDATE
+
+    /**
+     * Write the fields changed since the user was loaded, if its version is still current
+     * @return false if nothing changed or the user does not exist
+     * @throws OptimisticLockException if it was updated since it was loaded
+     */
+    boolean updateUser(User user);
+
+    boolean updateLastLogin(ObjectId userId);
+
+    /**
+     * Apply many small field updates at once (used by UserWriteBehindBuffer)
+     * @param updates userId -> (field -> new value)
+     * @return number of users actually modified
+     */
+    int applyFieldUpdates(Map<ObjectId, Map<String, Object>> updates);
+
+    boolean deactivateUser(ObjectId userId);
+
+    // DELETE
+
+    boolean deleteUser(ObjectId userId);
+
+    /**
+     * Release backend resources (e.g. write a final snapshot). No checked exceptions.
+     */
+    @Override
+    default void close() {
+    }
+}
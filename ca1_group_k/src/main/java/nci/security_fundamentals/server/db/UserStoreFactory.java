@@ -0,0 +1,73 @@
+package nci.security_fundamentals.server.db;
+
+import java.nio.file.Paths;
+
+import nci.security_fundamentals.config.EnvConfig;
+
+/**
+ * UserStoreFactory - Picks the UserStore backend from the .env file
+ *
+ * USED BY: ChatServer
+ *
+ * CONFIG (.env):
+ * - USER_STORE_BACKEND            "mongo" (default) or "memory"
+ * - USER_STORE_SNAPSHOT_PATH      memory only: snapshot file, unset = no snapshots
+ * - USER_STORE_SNAPSHOT_SECONDS   memory only: snapshot interval (default 60)
+ * - USER_STORE_METRICS            wrap the store in InstrumentedUserStore (default true)
+ * - USER_STORE_SLOW_MS            slow-call log threshold (default 100, 0 = off)
+ *
+ * The mongo backend uses the shared MongoConnectionManager pool; closing the store
+ * does not close the pool (the owner of the manager does that).
+ */
+public class UserStoreFactory {
+
+    public static final String MONGO = "mongo";
+    public static final String MEMORY = "memory";
+
+    private UserStoreFactory() {
+    }
+
+    /**
+     * The configured backend name, lower case
+     * @throws RuntimeException if USER_STORE_BACKEND is not a known backend
+     */
+    public static String backend() {
+        String backend = EnvConfig.get("USER_STORE_BACKEND");
+        if (backend == null || backend.isBlank()) {
+            return MONGO;
+        }
+        backend = backend.trim().toLowerCase();
+        if (!backend.equals(MONGO) && !backend.equals(MEMORY)) {
+            throw new RuntimeException("USER_STORE_BACKEND in .env file must be '" + MONGO + "' or '" + MEMORY + "': " + backend);
+        }
+        return backend;
+    }
+
+    public static boolean usesMongo() {
+        return backend().equals(MONGO);
+    }
+
+    /**
+     * Create the configured store, timed by InstrumentedUserStore unless USER_STORE_METRICS=false
+     */
+    public static UserStore create() {
+        UserStore store = createBackend();
+        if ("false".equalsIgnoreCase(EnvConfig.get("USER_STORE_METRICS"))) {
+            return store;
+        }
+        return new InstrumentedUserStore(store, EnvConfig.getLong("USER_STORE_SLOW_MS", 100));
+    }
+
+    private static UserStore createBackend() {
+        if (usesMongo()) {
+            return new User_repository(MongoConnectionManager.getInstance().getDatabase());
+        }
+
+        String snapshotPath = EnvConfig.get("USER_STORE_SNAPSHOT_PATH");
+        long snapshotSeconds = EnvConfig.getLong("USER_STORE_SNAPSHOT_SECONDS", 60);
+        if (snapshotPath == null || snapshotPath.isBlank()) {
+            return new InMemoryUserStore();
+        }
+        return new InMemoryUserStore(Paths.get(snapshotPath.trim()), snapshotSeconds);
+    }
+}
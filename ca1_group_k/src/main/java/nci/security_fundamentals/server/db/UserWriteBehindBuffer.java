@@ -0,0 +1,231 @@
+package nci.security_fundamentals.server.db;
+
+import java.util.Date;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.bson.types.ObjectId;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import nci.security_fundamentals.config.EnvConfig;
+
+/**
+ * UserWriteBehindBuffer - Batches bookkeeping writes (lastLogin, activity) to user_data
+ *
+ * PURPOSE: A login should not cost its own updateOne round trip just to move a timestamp.
+ *          Updates are queued here and written later in one batch (one unordered
+ *          bulkWrite on MongoDB).
+ * USED BY: AuthService (login and token handshake), ChatServer (creates and closes it)
+ *
+ * COALESCING:
+ * - Pending updates are kept per user, per field - a newer value replaces an older one
+ * - 50 logins by the same user between two flushes become a single update
+ *
+ * FLUSHING (.env, all optional):
+ * - USER_WRITE_BEHIND_FLUSH_MS      flush every N ms                          (default 1000)
+ * - USER_WRITE_BEHIND_FLUSH_SIZE    flush early once N users are pending      (default 500)
+ * - USER_WRITE_BEHIND_MAX_PENDING   hard limit - a caller adding a new user
+ *                                   beyond it flushes inline (backpressure);
+ *                                   if that fails the update is dropped       (default 10000)
+ * - close() flushes whatever is left, so nothing queued is lost on a clean shutdown
+ *
+ * ONLY FOR LOSSY-OK DATA: a crash loses at most one interval of updates. Anything that
+ * must be durable right away (passwords, isActive) still goes through the UserStore directly.
+ * For the same reason set() never throws: a database problem drops the update (counted in
+ * getStats()) instead of failing the login that caused it.
+ */
+public final class UserWriteBehindBuffer implements AutoCloseable {
+    private static final Logger log = LoggerFactory.getLogger(UserWriteBehindBuffer.class);
+
+    private final UserStore userRepository;
+    private final int flushSize;
+    private final int maxPending;
+    private final ScheduledExecutorService flushScheduler;
+
+    // userId -> (field -> latest value)
+    private final ConcurrentHashMap<ObjectId, Map<String, Object>> pending = new ConcurrentHashMap<>();
+    private final Object flushLock = new Object();
+    private final AtomicBoolean earlyFlushScheduled = new AtomicBoolean();
+    private volatile boolean closed;
+
+    // Counters for getStats()
+    private final AtomicLong queued = new AtomicLong();
+    private final AtomicLong coalesced = new AtomicLong();
+    private final AtomicLong written = new AtomicLong();
+    private final AtomicLong batches = new AtomicLong();
+    private final AtomicLong failedBatches = new AtomicLong();
+    private final AtomicLong dropped = new AtomicLong();
+
+    public UserWriteBehindBuffer(UserStore userRepository) {
+        this(userRepository,
+                EnvConfig.getLong("USER_WRITE_BEHIND_FLUSH_MS", 1000),
+                EnvConfig.getInt("USER_WRITE_BEHIND_FLUSH_SIZE", 500),
+                EnvConfig.getInt("USER_WRITE_BEHIND_MAX_PENDING", 10_000));
+    }
+
+    public UserWriteBehindBuffer(UserStore userRepository, long flushIntervalMs, int flushSize, int maxPending) {
+        if (flushIntervalMs <= 0 || flushSize <= 0 || maxPending < flushSize) {
+            throw new IllegalArgumentException("Invalid write-behind settings: interval=" + flushIntervalMs
+                    + "ms flushSize=" + flushSize + " maxPending=" + maxPending);
+        }
+        this.userRepository = userRepository;
+        this.flushSize = flushSize;
+        this.maxPending = maxPending;
+
+        this.flushScheduler = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread t = new Thread(r, "user-write-behind");
+            t.setDaemon(true);
+            return t;
+        });
+        flushScheduler.scheduleWithFixedDelay(this::safeFlush, flushIntervalMs, flushIntervalMs, TimeUnit.MILLISECONDS);
+    }
+
+    // ------------------ QUEUEING ------------------
+
+    /**
+     * Record that a user logged in (or resumed a session) just now
+     */
+    public void touchLastLogin(ObjectId userId) {
+        set(userId, "lastLogin", new Date());
+    }
+
+    /**
+     * Queue "$set field = value" for a user, replacing any pending value for that field
+     */
+    public void set(ObjectId userId, String field, Object value) {
+        if (userId == null) {
+            return;
+        }
+        if (closed) {
+            // Too late to buffer - write straight through
+            try {
+                userRepository.applyFieldUpdates(Map.of(userId, Map.of(field, value)));
+            } catch (RuntimeException e) {
+                dropped.incrementAndGet();
+                log.warn("[DB] Write-behind is closed and the direct write failed, update dropped: {}", e.getMessage());
+            }
+            return;
+        }
+
+        // Backpressure: a new user would push us over the limit - empty the buffer first
+        if (pending.size() >= maxPending && !pending.containsKey(userId)) {
+            safeFlush();
+            if (pending.size() >= maxPending) {
+                // Still full (the flush failed and requeued) - this update is the one that is lost
+                dropped.incrementAndGet();
+                return;
+            }
+        }
+
+        queued.incrementAndGet();
+        pending.compute(userId, (id, fields) -> {
+            if (fields == null) {
+                fields = new HashMap<>();
+            } else {
+                coalesced.incrementAndGet();
+            }
+            fields.put(field, value);
+            return fields;
+        });
+
+        if (pending.size() >= flushSize && earlyFlushScheduled.compareAndSet(false, true)) {
+            flushScheduler.execute(() -> {
+                earlyFlushScheduled.set(false);
+                safeFlush();
+            });
+        }
+    }
+
+    // ------------------ FLUSHING ------------------
+
+    /**
+     * Write everything pending as one batch
+     *
+     * @return number of users written
+     */
+    public int flush() {
+        synchronized (flushLock) {
+            if (pending.isEmpty()) {
+                return 0;
+            }
+
+            // Drain: remove() is atomic with compute(), so a later update starts a fresh entry
+            Map<ObjectId, Map<String, Object>> batch = new HashMap<>();
+            for (Iterator<ObjectId> it = pending.keySet().iterator(); it.hasNext(); ) {
+                ObjectId id = it.next();
+                Map<String, Object> fields = pending.remove(id);
+                if (fields != null) {
+                    batch.put(id, fields);
+                }
+            }
+
+            try {
+                userRepository.applyFieldUpdates(batch);
+                written.addAndGet(batch.size());
+                batches.incrementAndGet();
+                return batch.size();
+            } catch (RuntimeException e) {
+                failedBatches.incrementAndGet();
+                requeue(batch);
+                throw e;
+            }
+        }
+    }
+
+    /**
+     * Put a failed batch back - values queued since the drain are newer and win
+     */
+    private void requeue(Map<ObjectId, Map<String, Object>> batch) {
+        for (Map.Entry<ObjectId, Map<String, Object>> entry : batch.entrySet()) {
+            pending.merge(entry.getKey(), entry.getValue(), (newer, failed) -> {
+                failed.putAll(newer);
+                return failed;
+            });
+        }
+    }
+
+    private void safeFlush() {
+        try {
+            flush();
+        } catch (Exception e) {
+            log.warn("[DB] Write-behind flush failed, will retry: {}", e.getMessage());
+        }
+    }
+
+    /**
+     * Stop the flush timer and write whatever is still pending
+     */
+    @Override
+    public void close() {
+        closed = true;
+        flushScheduler.shutdown();
+        try {
+            flushScheduler.awaitTermination(5, TimeUnit.SECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        safeFlush();
+        if (!pending.isEmpty()) {
+            log.warn("[DB] Write-behind closed with {} unwritten user updates", pending.size());
+        }
+    }
+
+    // ------------------ STATS ------------------
+
+    public int getPendingCount() {
+        return pending.size();
+    }
+
+    public String getStats() {
+        return String.format("queued=%d coalesced=%d written=%d batches=%d failedBatches=%d dropped=%d pending=%d",
+                queued.get(), coalesced.get(), written.get(), batches.get(), failedBatches.get(), dropped.get(), pending.size());
+    }
+}
@@ -2,44 +2,100 @@ package nci.security_fundamentals.server.db;
 
 import java.util.ArrayList;
 import java.util.Date;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
+import java.util.Spliterator;
+import java.util.Spliterators;
+import java.util.stream.Stream;
+import java.util.stream.StreamSupport;
 
+import org.bson.BsonType;
 import org.bson.Document;
+import org.bson.codecs.configuration.CodecRegistries;
+import org.bson.codecs.configuration.CodecRegistry;
 import org.bson.types.ObjectId;
 
+import com.mongodb.MongoBulkWriteException;
+import com.mongodb.MongoCommandException;
+import com.mongodb.bulk.BulkWriteError;
 import com.mongodb.client.MongoCollection;
+import com.mongodb.client.MongoCursor;
 import com.mongodb.client.MongoDatabase;
+import com.mongodb.client.model.BulkWriteOptions;
 import com.mongodb.client.model.Filters;
+import com.mongodb.client.model.IndexOptions;
+import com.mongodb.client.model.Indexes;
+import com.mongodb.client.model.InsertManyOptions;
+import com.mongodb.client.model.Projections;
+import com.mongodb.client.model.Sorts;
+import com.mongodb.client.model.UpdateOneModel;
 import com.mongodb.client.model.Updates;
+import com.mongodb.client.model.WriteModel;
+import org.bson.conversions.Bson;
+import com.mongodb.bulk.BulkWriteResult;
 import com.mongodb.client.result.DeleteResult;
 import com.mongodb.client.result.UpdateResult;
 
 import nci.security_fundamentals.server.models.User;
+import nci.security_fundamentals.server.models.UserAuthView;
 
 /**
  * User Repository - Handles all database operations for Users
  * 
+ * The MongoDB backend of UserStore (USER_STORE_BACKEND=mongo, the default).
+ * 
  * This is the "Data Access Layer" - it separates database logic from business logic.
  * Think of it as a bridge between your Java objects and MongoDB.
  * 
+ * Full User reads and writes go through UserCodec (MongoCollection<User>), so no
+ * intermediate Document is built. Projections, updates and index management use
+ * the plain Document view of the same collection.
+ * 
  * CRUD Operations:
  * - Create: Insert new users
  * - Read: Find/query users
  * - Update: Modify existing users
  * - Delete: Remove users
+ * 
+ * Indexes (created by ensureIndexes() at server startup):
+ * - username (unique) - login lookups, duplicate usernames rejected by MongoDB
+ * - email (unique)    - duplicate emails rejected by MongoDB; partial (string emails only),
+ *                       so any number of users may have no email (stored as null)
+ * - isActive + _id    - findActiveUsers(), and findActivePage()'s keyset query
+ *                       { isActive: true, _id > x } sorted by _id without an in-memory sort
  */
-public class User_repository {
+public class User_repository implements UserStore {
+    
+    // MongoDB error code for a unique index violation
+    public static final int DUPLICATE_KEY_ERROR = 11000;
+    // Documents per driver round trip when streaming
+    public static final int DEFAULT_BATCH_SIZE = 500;
     
-    private final MongoCollection<Document> collection;
+    // Only what the handshake and login need - skips imagePasswordHash, createdAt, lastLogin
+    private static final Bson AUTH_FIELDS = Projections.include("username", "passwordHash", "isActive");
+    private static final Bson LOGIN_FIELDS = Projections.include("username", "email", "passwordHash", "isActive");
+    // Partial filter of the unique email index - users without an email are left out of it
+    private static final Bson HAS_EMAIL = Filters.type("email", BsonType.STRING);
+    
+    private final MongoCollection<Document> collection; // projections, updates, indexes
+    private final MongoCollection<User> users;          // full User documents via UserCodec
     
     /**
      * Constructor - takes a MongoDB database connection
      * @param database The MongoDB database instance
      */
     public User_repository(MongoDatabase database) {
+        // UserCodec first, then the driver defaults for everything else
+        CodecRegistry registry = CodecRegistries.fromRegistries(
+                CodecRegistries.fromCodecs(new UserCodec()),
+                database.getCodecRegistry());
+        MongoDatabase userDatabase = database.withCodecRegistry(registry);
+        
         // Get the "users" collection (like a table in SQL)
         // If it doesn't exist, MongoDB creates it automatically
-        this.collection = database.getCollection("user_data");
+        this.collection = userDatabase.getCollection("user_data");
+        this.users = userDatabase.getCollection("user_data", User.class);
     }
     
     // CREATE Operations
@@ -49,18 +105,124 @@ public class User_repository {
      * @param user The user object to save
      * @return The saved user with generated ID
      */
+    @Override
     public User createUser(User user) {
-        // Convert User object to MongoDB Document
-        Document doc = user.toDocument();
+        // UserCodec writes the User straight to BSON and sets the generated _id on it
+        users.insertOne(user);
+        user.markClean();
         
-        // Insert into MongoDB
-        collection.insertOne(doc);
+        return user;
+    }
+    
+    /**
+     * Create many users with a single unordered insertMany
+     * 
+     * Duplicates are NOT checked with a lookup first - the unique index on
+     * username rejects them, and every other user in the batch is still inserted.
+     * 
+     * @param users The users to save (ids are set on the ones that were inserted)
+     * @return Position in the list -> error message, for every user that was NOT inserted
+     */
+    @Override
+    public Map<Integer, String> createUsers(List<User> newUsers) {
+        Map<Integer, String> failures = new LinkedHashMap<>();
+        if (newUsers.isEmpty()) {
+            return failures;
+        }
         
-        // MongoDB automatically adds an _id field
-        // Get it and set it in our User object
-        user.setId(doc.getObjectId("_id"));
+        try {
+            // ordered(false) keeps going after a duplicate instead of stopping the batch
+            users.insertMany(newUsers, new InsertManyOptions().ordered(false));
+        } catch (MongoBulkWriteException e) {
+            for (BulkWriteError error : e.getWriteErrors()) {
+                failures.put(error.getIndex(), describeWriteError(error.getCode(), error.getMessage()));
+            }
+        }
         
-        return user;
+        // UserCodec generated an _id for every user before sending - clear it on the rejected ones
+        for (int i = 0; i < newUsers.size(); i++) {
+            if (failures.containsKey(i)) {
+                newUsers.get(i).setId(null);
+            } else {
+                newUsers.get(i).markClean();
+            }
+        }
+        
+        return failures;
+    }
+    
+    /**
+     * Turn a write error into a readable reason
+     * Duplicate-key messages name the violated index, e.g. "... index: email_1 dup key ..."
+     */
+    public static String describeWriteError(int code, String message) {
+        if (code != DUPLICATE_KEY_ERROR) {
+            return message;
+        }
+        return message != null && message.contains("email_1") ? DUPLICATE_EMAIL : DUPLICATE_USERNAME;
+    }
+    
+    // INDEX Management
+    
+    /**
+     * Create the indexes the repository relies on, and report any problems
+     * 
+     * For each wanted index:
+     * - missing       -> created
+     * - present       -> left alone
+     * - conflicting   -> reported, NOT dropped (e.g. username index exists but isn't unique,
+     *                    or an older email index that still counts null as a value)
+     * - create failed -> reported (e.g. existing duplicate emails block a unique index)
+     * 
+     * Safe to call on every startup - an identical existing index is a no-op.
+     * 
+     * @return One line per problem found; empty if all indexes are in place
+     */
+    @Override
+    public List<String> ensureIndexes() {
+        List<String> problems = new ArrayList<>();
+        ensureIndex(List.of("username"), true, null, problems);
+        // Partial - UserCodec writes email: null, and a plain unique index would let only one user have it
+        ensureIndex(List.of("email"), true, HAS_EMAIL, problems);
+        // Compound, so active-user pages are an index range scan already in _id order
+        // (it also serves plain { isActive: true } queries - no separate isActive index)
+        ensureIndex(List.of("isActive", "_id"), false, null, problems);
+        return problems;
+    }
+    
+    /**
+     * @param partialFilter Only index documents matching this, or null for all documents
+     */
+    private void ensureIndex(List<String> fields, boolean unique, Bson partialFilter, List<String> problems) {
+        String name = String.join(", ", fields);
+        // Look for an existing index on exactly these fields, in this order
+        for (Document index : collection.listIndexes()) {
+            Document key = index.get("key", Document.class);
+            if (key != null && new ArrayList<>(key.keySet()).equals(fields)) {
+                boolean existingUnique = index.getBoolean("unique", false);
+                boolean existingPartial = index.containsKey("partialFilterExpression");
+                if (existingUnique != unique) {
+                    problems.add("Index " + index.getString("name") + " on " + name + " is "
+                            + (existingUnique ? "unique" : "not unique") + " but should "
+                            + (unique ? "be unique" : "not be unique"));
+                } else if (existingPartial != (partialFilter != null)) {
+                    problems.add("Index " + index.getString("name") + " on " + name + " is "
+                            + (existingPartial ? "partial" : "not partial") + " but should "
+                            + (partialFilter != null ? "only cover " + partialFilter.toBsonDocument() : "cover every document"));
+                }
+                return;
+            }
+        }
+        
+        try {
+            IndexOptions options = new IndexOptions().unique(unique);
+            if (partialFilter != null) {
+                options.partialFilterExpression(partialFilter);
+            }
+            collection.createIndex(Indexes.ascending(fields), options);
+        } catch (MongoCommandException e) {
+            problems.add("Could not create " + (unique ? "unique " : "") + "index on " + name + ": " + e.getErrorMessage());
+        }
     }
     
     // READ Operations
@@ -70,12 +232,11 @@ public class User_repository {
      * @param id The MongoDB ObjectId
      * @return User object or null if not found
      */
+    @Override
     public User findById(ObjectId id) {
         // Filters.eq creates a query: { "_id": id }
-        Document doc = collection.find(Filters.eq("_id", id)).first();
-        
-        // If found, convert Document to User object
-        return doc != null ? new User(doc) : null;
+        // UserCodec decodes straight into a User - null if not found
+        return users.find(Filters.eq("_id", id)).first();
     }
     
     /**
@@ -83,10 +244,10 @@ public class User_repository {
      * @param username The username to search for
      * @return User object or null if not found
      */
+    @Override
     public User findByUsername(String username) {
         // Query: { "username": username }
-        Document doc = collection.find(Filters.eq("username", username)).first();
-        return doc != null ? new User(doc) : null;
+        return users.find(Filters.eq("username", username)).first();
     }
     
     /**
@@ -94,67 +255,197 @@ public class User_repository {
      * @param email The email to search for
      * @return User object or null if not found
      */
+    @Override
     public User findByEmail(String email) {
-        Document doc = collection.find(Filters.eq("email", email)).first();
-        return doc != null ? new User(doc) : null;
+        return users.find(emailIs(email)).first();
+    }
+    
+    /**
+     * Find the authentication fields of a user by username (handshake path)
+     * Projected to _id, username, isActive and passwordHash.
+     * @param username The username to search for
+     * @return Lightweight view or null if not found
+     */
+    @Override
+    public UserAuthView findAuthViewByUsername(String username) {
+        Document doc = collection.find(Filters.eq("username", username)).projection(AUTH_FIELDS).first();
+        return doc != null ? new UserAuthView(doc) : null;
+    }
+    
+    /**
+     * Find the authentication fields of a user by ID (handshake fallback)
+     * @param id The MongoDB ObjectId
+     * @return Lightweight view or null if not found
+     */
+    @Override
+    public UserAuthView findAuthViewById(ObjectId id) {
+        Document doc = collection.find(Filters.eq("_id", id)).projection(AUTH_FIELDS).first();
+        return doc != null ? new UserAuthView(doc) : null;
+    }
+    
+    /**
+     * Find what login needs: the auth fields plus email (for the JWT claims)
+     * @param username The username to search for
+     * @return Lightweight view or null if not found
+     */
+    @Override
+    public UserAuthView findLoginView(String username) {
+        Document doc = collection.find(Filters.eq("username", username)).projection(LOGIN_FIELDS).first();
+        return doc != null ? new UserAuthView(doc) : null;
     }
     
     /**
      * Get all users
+     * Loads the whole collection into memory - prefer streamAll() or findPage() on large collections.
      * @return List of all users
      */
+    @Override
     public List<User> findAll() {
-        List<User> users = new ArrayList<>();
-        
         // Iterate through all documents in the collection
-        for (Document doc : collection.find()) {
-            users.add(new User(doc));
-        }
-        
-        return users;
+        return users.find().into(new ArrayList<>());
     }
     
     /**
      * Get all active users
+     * Loads every active user into memory - prefer streamActiveUsers() or findActivePage().
      * @return List of active users
      */
+    @Override
     public List<User> findActiveUsers() {
-        List<User> users = new ArrayList<>();
-        
         // Query: { "isActive": true }
-        for (Document doc : collection.find(Filters.eq("isActive", true))) {
-            users.add(new User(doc));
-        }
-        
-        return users;
+        return users.find(Filters.eq("isActive", true)).into(new ArrayList<>());
+    }
+    
+    // STREAMING / PAGINATED READ Operations
+    
+    /**
+     * Stream all users, fetched lazily batchSize documents at a time
+     * 
+     * Memory stays constant: only the current driver batch is held.
+     * The stream holds an open cursor - always close it:
+     *   try (Stream<User> users = repo.streamAll(500)) { users.forEach(...); }
+     * 
+     * @param batchSize Documents per round trip to MongoDB
+     * @return Lazy stream of users in natural order
+     */
+    @Override
+    public Stream<User> streamAll(int batchSize) {
+        return stream(users.find().batchSize(batchSize).cursor());
+    }
+    
+    /**
+     * Stream active users lazily (uses the isActive + _id index)
+     * Same rules as streamAll() - close the stream when done.
+     * 
+     * @param batchSize Documents per round trip to MongoDB
+     * @return Lazy stream of active users
+     */
+    @Override
+    public Stream<User> streamActiveUsers(int batchSize) {
+        return stream(users.find(Filters.eq("isActive", true)).batchSize(batchSize).cursor());
+    }
+    
+    /**
+     * Keyset pagination over all users, ordered by _id
+     * 
+     * Walk the collection with constant memory and no open cursor between pages:
+     *   List<User> page = repo.findPage(null, 1000);
+     *   while (!page.isEmpty()) {
+     *       ...
+     *       page = repo.findPage(page.get(page.size() - 1).getId(), 1000);
+     *   }
+     * Unlike skip(), each page costs the same however deep into the collection it is.
+     * 
+     * @param afterId Last _id of the previous page, or null for the first page
+     * @param limit   Page size
+     * @return Up to limit users with _id greater than afterId
+     */
+    @Override
+    public List<User> findPage(ObjectId afterId, int limit) {
+        Bson filter = afterId == null ? new Document() : Filters.gt("_id", afterId);
+        return page(filter, limit);
+    }
+    
+    /**
+     * Keyset pagination over active users, ordered by _id (a range scan on the isActive + _id index)
+     * @param afterId Last _id of the previous page, or null for the first page
+     * @param limit   Page size
+     * @return Up to limit active users with _id greater than afterId
+     */
+    @Override
+    public List<User> findActivePage(ObjectId afterId, int limit) {
+        Bson filter = afterId == null
+                ? Filters.eq("isActive", true)
+                : Filters.and(Filters.eq("isActive", true), Filters.gt("_id", afterId));
+        return page(filter, limit);
+    }
+    
+    private List<User> page(Bson filter, int limit) {
+        return users.find(filter).sort(Sorts.ascending("_id")).limit(limit).batchSize(limit)
+                .into(new ArrayList<>(limit));
+    }
+    
+    /**
+     * Wrap a driver cursor as a lazy Stream that closes the cursor when the stream is closed
+     */
+    private static Stream<User> stream(MongoCursor<User> cursor) {
+        return StreamSupport.stream(
+                        Spliterators.spliteratorUnknownSize(cursor, Spliterator.ORDERED | Spliterator.NONNULL), false)
+                .onClose(cursor::close);
     }
     
     // UPDATE Operations
     
     /**
-     * Update an existing user
+     * Update an existing user - only the fields changed since it was loaded
+     * 
+     * - No changed fields: nothing is sent to MongoDB, returns false
+     * - Only matches if the stored version is still the one this copy was loaded with,
+     *   then bumps it (optimistic concurrency - no locks held between load and save)
+     * 
      * @param user The user with updated information
      * @return true if update was successful
+     * @throws OptimisticLockException if the user was updated since this copy was loaded
      */
+    @Override
     public boolean updateUser(User user) {
         if (user.getId() == null) {
             return false; // Can't update without an ID
         }
+        if (!user.isDirty()) {
+            return false; // Nothing changed - skip the round trip
+        }
+        
+        // $set only the changed fields, plus the version bump
+        List<Bson> updates = new ArrayList<>();
+        user.getDirtyValues().forEach((field, value) -> updates.add(Updates.set(field, value)));
+        updates.add(Updates.inc("version", 1L));
         
-        // Create update document with all fields
         UpdateResult result = collection.updateOne(
-            Filters.eq("_id", user.getId()),
-            Updates.combine(
-                Updates.set("username", user.getUsername()),
-                Updates.set("email", user.getEmail()),
-                Updates.set("passwordHash", user.getPasswordHash()),
-                Updates.set("imagePasswordHash", user.getImagePasswordHash()),
-                Updates.set("lastLogin", user.getLastLogin()),
-                Updates.set("isActive", user.isActive())
-            )
+            Filters.and(Filters.eq("_id", user.getId()), versionIs(user.getVersion())),
+            Updates.combine(updates)
         );
         
-        return result.getModifiedCount() > 0;
+        if (result.getMatchedCount() == 0) {
+            if (collection.find(Filters.eq("_id", user.getId())).projection(Projections.include("_id")).first() == null) {
+                return false; // User no longer exists
+            }
+            throw new OptimisticLockException(user.getId(), user.getVersion());
+        }
+        
+        user.setVersion(user.getVersion() + 1);
+        user.markClean();
+        return true;
+    }
+    
+    /**
+     * Version filter - documents written before versioning have no field and count as version 0
+     */
+    private static Bson versionIs(long version) {
+        if (version == 0) {
+            return Filters.or(Filters.eq("version", 0L), Filters.exists("version", false));
+        }
+        return Filters.eq("version", version);
     }
     
     /**
@@ -162,6 +453,7 @@ public class User_repository {
      * @param userId The user's ID
      * @return true if successful
      */
+    @Override
     public boolean updateLastLogin(ObjectId userId) {
         UpdateResult result = collection.updateOne(
             Filters.eq("_id", userId),
@@ -171,15 +463,42 @@ public class User_repository {
         return result.getModifiedCount() > 0;
     }
     
+    /**
+     * Apply many small "$set" updates in one round trip (used by UserWriteBehindBuffer)
+     * 
+     * Unordered, so one bad update does not stop the rest of the batch.
+     * 
+     * @param updates userId -> (field -> new value)
+     * @return number of users actually modified
+     */
+    @Override
+    public int applyFieldUpdates(Map<ObjectId, Map<String, Object>> updates) {
+        if (updates.isEmpty()) {
+            return 0;
+        }
+        
+        List<WriteModel<Document>> writes = new ArrayList<>(updates.size());
+        for (Map.Entry<ObjectId, Map<String, Object>> entry : updates.entrySet()) {
+            List<Bson> sets = new ArrayList<>(entry.getValue().size());
+            entry.getValue().forEach((field, value) -> sets.add(Updates.set(field, value)));
+            writes.add(new UpdateOneModel<>(Filters.eq("_id", entry.getKey()), Updates.combine(sets)));
+        }
+        
+        BulkWriteResult result = collection.bulkWrite(writes, new BulkWriteOptions().ordered(false));
+        return result.getModifiedCount();
+    }
+    
     /**
      * Deactivate a user (soft delete)
      * @param userId The user's ID
      * @return true if successful
      */
+    @Override
     public boolean deactivateUser(ObjectId userId) {
+        // Bumps the version too, so an edit made from an older copy cannot go through unnoticed
         UpdateResult result = collection.updateOne(
             Filters.eq("_id", userId),
-            Updates.set("isActive", false)
+            Updates.combine(Updates.set("isActive", false), Updates.inc("version", 1L))
         );
         
         return result.getModifiedCount() > 0;
@@ -192,6 +511,7 @@ public class User_repository {
      * @param userId The user's ID
      * @return true if successful
      */
+    @Override
     public boolean deleteUser(ObjectId userId) {
         DeleteResult result = collection.deleteOne(Filters.eq("_id", userId));
         return result.getDeletedCount() > 0;
@@ -202,8 +522,13 @@ public class User_repository {
      * @param username The username to check
      * @return true if exists
      */
+    @Override
     public boolean usernameExists(String username) {
-        return collection.countDocuments(Filters.eq("username", username)) > 0;
+        // Index lookup on username, limit 1, _id-only projection (still fetches the document)
+        return collection.find(Filters.eq("username", username))
+                .projection(Projections.include("_id"))
+                .limit(1)
+                .first() != null;
     }
     
     /**
@@ -211,7 +536,18 @@ public class User_repository {
      * @param email The email to check
      * @return true if exists
      */
+    @Override
     public boolean emailExists(String email) {
-        return collection.countDocuments(Filters.eq("email", email)) > 0;
+        return collection.find(emailIs(email))
+                .projection(Projections.include("_id"))
+                .limit(1)
+                .first() != null;
+    }
+    
+    /**
+     * email == value, with the email index's partial filter repeated so MongoDB can use it
+     */
+    private static Bson emailIs(String email) {
+        return Filters.and(Filters.eq("email", email), HAS_EMAIL);
     }
 }
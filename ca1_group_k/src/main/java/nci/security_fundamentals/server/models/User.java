@@ -1,6 +1,12 @@
 package nci.security_fundamentals.server.models;
 
+import java.util.Collections;
 import java.util.Date;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Set;
 
 import org.bson.Document;
 import org.bson.types.ObjectId;
@@ -13,6 +19,13 @@ import org.bson.types.ObjectId;
  * our document structure and provide methods to convert to/from MongoDB Documents.
  * 
  * This is the "schema" - it defines what fields a User should have.
+ * 
+ * CHANGE TRACKING:
+ * - Every setter records the field it changed (by its MongoDB name, e.g. "passwordHash");
+ *   setting a field to the value it already has records nothing
+ * - updateUser() only writes those fields, and skips the write if nothing changed
+ * - The store calls markClean() after loading or saving
+ * - version is bumped by every updateUser(); an update made from a stale copy is rejected
  */
 public class User {
     
@@ -25,6 +38,10 @@ public class User {
     private Date createdAt;           // When the user was created
     private Date lastLogin;           // Last login timestamp
     private boolean isActive;         // Account status
+    private long version;             // Optimistic concurrency - bumped on every updateUser()
+    
+    // Fields changed through setters since the last load/save (not stored)
+    private final Set<String> dirtyFields = new LinkedHashSet<>();
     
     // Constructors
     
@@ -59,6 +76,8 @@ public class User {
         this.createdAt = doc.getDate("createdAt");
         this.lastLogin = doc.getDate("lastLogin");
         this.isActive = doc.getBoolean("isActive", true);
+        Number storedVersion = doc.get("version", Number.class);
+        this.version = storedVersion != null ? storedVersion.longValue() : 0;
     }
     
     // Conversion Methods
@@ -81,7 +100,8 @@ public class User {
            .append("imagePasswordHash", imagePasswordHash)
            .append("createdAt", createdAt)
            .append("lastLogin", lastLogin)
-           .append("isActive", isActive);
+           .append("isActive", isActive)
+           .append("version", version);
         
         return doc;
     }
@@ -102,6 +122,9 @@ public class User {
     }
     
     public void setUsername(String username) {
+        if (!Objects.equals(this.username, username)) {
+            dirtyFields.add("username");
+        }
         this.username = username;
     }
     
@@ -110,6 +133,9 @@ public class User {
     }
     
     public void setEmail(String email) {
+        if (!Objects.equals(this.email, email)) {
+            dirtyFields.add("email");
+        }
         this.email = email;
     }
     
@@ -118,6 +144,9 @@ public class User {
     }
     
     public void setPasswordHash(String passwordHash) {
+        if (!Objects.equals(this.passwordHash, passwordHash)) {
+            dirtyFields.add("passwordHash");
+        }
         this.passwordHash = passwordHash;
     }
     
@@ -126,6 +155,9 @@ public class User {
     }
     
     public void setImagePasswordHash(String imagePasswordHash) {
+        if (!Objects.equals(this.imagePasswordHash, imagePasswordHash)) {
+            dirtyFields.add("imagePasswordHash");
+        }
         this.imagePasswordHash = imagePasswordHash;
     }
     
@@ -134,6 +166,9 @@ public class User {
     }
     
     public void setCreatedAt(Date createdAt) {
+        if (!Objects.equals(this.createdAt, createdAt)) {
+            dirtyFields.add("createdAt");
+        }
         this.createdAt = createdAt;
     }
     
@@ -142,6 +177,9 @@ public class User {
     }
     
     public void setLastLogin(Date lastLogin) {
+        if (!Objects.equals(this.lastLogin, lastLogin)) {
+            dirtyFields.add("lastLogin");
+        }
         this.lastLogin = lastLogin;
     }
     
@@ -150,9 +188,63 @@ public class User {
     }
     
     public void setActive(boolean active) {
+        if (isActive != active) {
+            dirtyFields.add("isActive");
+        }
         isActive = active;
     }
     
+    public long getVersion() {
+        return version;
+    }
+    
+    /**
+     * Set by the store only - not a tracked change
+     */
+    public void setVersion(long version) {
+        this.version = version;
+    }
+    
+    // Change Tracking
+    
+    public boolean isDirty() {
+        return !dirtyFields.isEmpty();
+    }
+    
+    /**
+     * Names of the fields changed since the last load/save
+     */
+    public Set<String> getDirtyFields() {
+        return Collections.unmodifiableSet(dirtyFields);
+    }
+    
+    /**
+     * Field name -> current value, for every changed field (what updateUser() will $set)
+     */
+    public Map<String, Object> getDirtyValues() {
+        Map<String, Object> values = new LinkedHashMap<>();
+        for (String field : dirtyFields) {
+            values.put(field, switch (field) {
+                case "username" -> username;
+                case "email" -> email;
+                case "passwordHash" -> passwordHash;
+                case "imagePasswordHash" -> imagePasswordHash;
+                case "createdAt" -> createdAt;
+                case "lastLogin" -> lastLogin;
+                case "isActive" -> isActive;
+                default -> throw new IllegalStateException("Unknown field " + field);
+            });
+        }
+        return values;
+    }
+    
+    /**
+     * Forget tracked changes - called by the store after a load or a successful save
+     */
+    public void markClean() {
+        dirtyFields.clear();
+    }
+    
     // Utility Methods
     
     @Override
@@ -163,6 +255,7 @@ public class User {
                 ", email='" + email + '\'' +
                 ", createdAt=" + createdAt +
                 ", isActive=" + isActive +
+                ", version=" + version +
                 '}';
     }
 }
@@ -0,0 +1,80 @@
+package nci.security_fundamentals.server.models;
+
+import org.bson.Document;
+import org.bson.types.ObjectId;
+
+/**
+ * UserAuthView - The slice of a user that authentication needs
+ *
+ * Loaded with a projection by User_repository.findAuthView...() so MongoDB only
+ * sends these fields - never imagePasswordHash, createdAt or lastLogin.
+ * InMemoryUserStore builds the same view straight from its stored User.
+ *
+ * Fields:
+ * - id, username, isActive: always loaded
+ * - passwordHash: always loaded (login compares it, the handshake ignores it)
+ * - email: only loaded by findLoginView() because the JWT carries it; null otherwise
+ *
+ * Read-only on purpose: use User for anything that is written back.
+ */
+public class UserAuthView {
+
+    private final ObjectId id;
+    private final String username;
+    private final String email;
+    private final String passwordHash;
+    private final boolean isActive;
+
+    /**
+     * Constructor from a projected MongoDB Document
+     */
+    public UserAuthView(Document doc) {
+        this.id = doc.getObjectId("_id");
+        this.username = doc.getString("username");
+        this.email = doc.getString("email");
+        this.passwordHash = doc.getString("passwordHash");
+        this.isActive = doc.getBoolean("isActive", true);
+    }
+
+    /**
+     * Constructor from a stored User (InMemoryUserStore - no projection needed)
+     * 
+     * @param includeEmail false for the handshake view, true for the login view
+     */
+    public UserAuthView(User user, boolean includeEmail) {
+        this.id = user.getId();
+        this.username = user.getUsername();
+        this.email = includeEmail ? user.getEmail() : null;
+        this.passwordHash = user.getPasswordHash();
+        this.isActive = user.isActive();
+    }
+
+    public ObjectId getId() {
+        return id;
+    }
+
+    public String getUsername() {
+        return username;
+    }
+
+    public String getEmail() {
+        return email;
+    }
+
+    public String getPasswordHash() {
+        return passwordHash;
+    }
+
+    public boolean isActive() {
+        return isActive;
+    }
+
+    @Override
+    public String toString() {
+        return "UserAuthView{" +
+                "id=" + id +
+                ", username='" + username + '\'' +
+                ", isActive=" + isActive +
+                '}';
+    }
+}